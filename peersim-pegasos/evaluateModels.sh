@@ -0,0 +1,15 @@
+#!/bin/sh
+# evaluates all the models at once, in one scan of the data file; a model is a
+# directory of global_<id>.dat files, a binary export or a model file
+usage() {
+	echo "Usage: $0 <dataFileName> <lambda> <hashBits> <model>..."
+	exit 1
+}
+[ $# -lt 4 ] && usage
+data=$1
+lambda=$2
+hashBits=$3
+shift 3
+# the models take 8 * features * models bytes of heap, set HEAP to change it
+heap=${HEAP:-4g}
+java -Xmx$heap -classpath ./lib/*:classes -Djava.library.path=./lib peersim.gossip.MultiModelEvaluator --dataFile $data --lambda $lambda --hashBits $hashBits "$@"
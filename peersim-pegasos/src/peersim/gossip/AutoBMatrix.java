@@ -0,0 +1,69 @@
+/*
+ * Peersim-Gadget : A Gadget protocol implementation in peersim based on the paper
+ * Chase Henzel, Haimonti Dutta
+ * GADGET SVM: A Gossip-bAseD sub-GradiEnT SVM Solver
+ *
+ * Copyright (C) 2012
+ * Deepak Nayak
+ * Columbia University, Computer Science MS'13
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package peersim.gossip;
+
+/**
+ * Class AutoBMatrix
+ * Tries the builders from the cheapest to the most expensive one and keeps the
+ * first matrix whose spectral gap reaches the target given by
+ * protocol.1.gap. If none does, the matrix with the largest gap is kept,
+ * the FMMC one unless its solve failed (see {@link FmmcBMatrix}).
+ */
+public class AutoBMatrix extends BMatrixBuilder {
+
+	private final double gap;
+
+	private String chosen = "none";
+
+	private boolean cacheable = true;
+
+	public AutoBMatrix(double gap) {
+		this.gap = gap;
+	}
+
+	public String getName() { return AUTO + "(" + chosen + ")"; }
+
+	public boolean isCacheable() { return cacheable; }
+
+	public double[][] build(int lid) {
+		double[][] best = null;
+		double bestSlem = Double.MAX_VALUE;
+		cacheable = true;
+		for(String name : BY_COST) {
+			BMatrixBuilder builder = BMatrixBuilder.create(name, gap);
+			long start = System.currentTimeMillis();
+			double[][] B = builder.build(lid);
+			double slem = builder.report(B, System.currentTimeMillis() - start);
+			// with a failed builder another run may choose differently
+			cacheable &= builder.isCacheable();
+			if(slem < bestSlem) {
+				best = B;
+				bestSlem = slem;
+				chosen = builder.getName();
+			}
+			if(1 - slem >= gap) break;
+		}
+		return best;
+	}
+}
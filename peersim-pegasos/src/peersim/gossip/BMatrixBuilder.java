@@ -0,0 +1,100 @@
+/*
+ * Peersim-Gadget : A Gadget protocol implementation in peersim based on the paper
+ * Chase Henzel, Haimonti Dutta
+ * GADGET SVM: A Gossip-bAseD sub-GradiEnT SVM Solver
+ *
+ * Copyright (C) 2012
+ * Deepak Nayak
+ * Columbia University, Computer Science MS'13
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package peersim.gossip;
+
+/**
+ * Class BMatrixBuilder
+ * Builds the transition matrix B used by pushsum2. Apart from the full FMMC
+ * solve, all builders use a local rule on the reciprocal links of the overlay
+ * (see {@link Overlay#mutual}), so node i only needs the degrees of its
+ * neighbours to fill its row. Every built matrix is symmetric and doubly
+ * stochastic, the self weight B[i][i] taking what is left of the row.
+ * The builder is selected with protocol.1.bmatrix, see {@link #create(String)}.
+ */
+public abstract class BMatrixBuilder {
+
+	public static final String FMMC = "fmmc";
+	public static final String METROPOLIS = "metropolis";
+	public static final String MAXDEGREE = "maxdegree";
+	public static final String BESTCONSTANT = "bestconstant";
+	/** tries the builders from the cheapest one, see {@link AutoBMatrix} */
+	public static final String AUTO = "auto";
+
+	/** Builders in order of increasing cost */
+	static final String[] BY_COST = { MAXDEGREE, METROPOLIS, BESTCONSTANT, FMMC };
+
+	/** SLEM of the last matrix passed to {@link #report} */
+	private double lastSlem = -1;
+
+	/**
+	 * Returns the builder for the given config name.
+	 * @param gap minimum spectral gap, only used by {@value #AUTO}
+	 */
+	public static BMatrixBuilder create(String name, double gap) {
+		if(name.equals(FMMC)) return new FmmcBMatrix();
+		if(name.equals(METROPOLIS)) return new MetropolisBMatrix();
+		if(name.equals(MAXDEGREE)) return new MaxDegreeBMatrix();
+		if(name.equals(BESTCONSTANT)) return new BestConstantBMatrix();
+		if(name.equals(AUTO)) return new AutoBMatrix(gap);
+		throw new IllegalArgumentException("unknown B matrix builder: " + name);
+	}
+
+	/** Name of this builder as used in the config */
+	public abstract String getName();
+
+	/** Builds B for the overlay of the {@link peersim.core.Linkable} lid */
+	public abstract double[][] build(int lid);
+
+	/**
+	 * Prints the spectral gap (1 - SLEM) of B along with the time it took to
+	 * build it, and returns the SLEM.
+	 */
+	public double report(double[][] B, long buildMillis) {
+		lastSlem = Spectral.slem(B);
+		System.out.println("[bmatrix] " + getName() + ": SLEM " + lastSlem
+				+ ", spectral gap " + (1 - lastSlem) + ", built in " + buildMillis + " ms");
+		return lastSlem;
+	}
+
+	/**
+	 * False if the last matrix built is not what this builder stands for,
+	 * e.g. a fallback, so it must not be cached under its name
+	 */
+	public boolean isCacheable() { return true; }
+
+	/** SLEM of the last reported matrix, negative if none */
+	public double getSlem() { return lastSlem; }
+
+	/** Sets B[i][i] so that every row sums to one */
+	protected static void fillDiagonal(double[][] B) {
+		int n = B.length;
+		for(int i=0;i<n;i++) {
+			double sum = 0.0;
+			for(int j=0;j<n;j++) {
+				if(j != i) sum += B[i][j];
+			}
+			B[i][i] = 1.0 - sum;
+		}
+	}
+}
@@ -0,0 +1,204 @@
+/*
+ * Peersim-Gadget : A Gadget protocol implementation in peersim based on the paper
+ * Chase Henzel, Haimonti Dutta
+ * GADGET SVM: A Gossip-bAseD sub-GradiEnT SVM Solver
+ *
+ * Copyright (C) 2012
+ * Deepak Nayak
+ * Columbia University, Computer Science MS'13
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package peersim.gossip;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Class BMatrixCache
+ * A directory of solved B matrices, so that runs on an overlay already seen
+ * (same random.seed, degree and network.size) skip the solver. A matrix is
+ * stored in file &lt;builder&gt;-&lt;digest&gt;.bmat, digest being
+ * {@link Overlay#digest} of the overlay it was built for, in a sparse binary
+ * layout:
+ * <pre>
+ * int magic, int n, then for each row: int nnz, nnz * (int column, double value)
+ * </pre>
+ * Only valid matrices are stored (see {@link #isValid}), and a malformed
+ * entry reads as a miss. Hits touch the file, and when the directory holds more than the configured
+ * number of matrices the least recently used ones are deleted.
+ */
+public class BMatrixCache {
+
+	private static final int MAGIC = 0x424d4154; // "BMAT"
+
+	private static final String SUFFIX = ".bmat";
+
+	/** Tolerance on the row and column sums of a valid matrix */
+	private static final double TOLERANCE = 1e-9;
+
+	private final File dir;
+
+	private final int capacity;
+
+	/**
+	 * @param dir directory holding the matrices, created if needed
+	 * @param capacity maximum number of matrices kept
+	 */
+	public BMatrixCache(String dir, int capacity) {
+		this.dir = new File(dir);
+		this.capacity = capacity;
+		this.dir.mkdirs();
+	}
+
+	/** Cache key of the matrix built by builder for the overlay nbrs */
+	public static String key(String builder, int[][] nbrs) {
+		return builder + "-" + Overlay.digest(nbrs);
+	}
+
+	/** Returns the cached matrix for key, or null on a miss */
+	public double[][] get(String key) {
+		File f = new File(dir, key + SUFFIX);
+		if(!f.isFile()) return null;
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+			if(in.readInt() != MAGIC) return null;
+			int n = in.readInt();
+			// every row takes at least its int nnz
+			if(n <= 0 || n > (f.length() - 8) / 4)
+				throw new IOException("bad size " + n);
+			double[][] B = new double[n][n];
+			for(int i=0;i<n;i++) {
+				int nnz = in.readInt();
+				if(nnz < 0 || nnz > n) throw new IOException("bad row length " + nnz);
+				for(int k=0;k<nnz;k++) {
+					int j = in.readInt();
+					if(j < 0 || j >= n) throw new IOException("bad column " + j);
+					B[i][j] = in.readDouble();
+				}
+			}
+			f.setLastModified(System.currentTimeMillis());
+			return B;
+		}
+		catch (IOException ioe) {
+			// a truncated or corrupt entry is just a miss
+			ioe.printStackTrace();
+			return null;
+		}
+		finally {
+			close(in);
+		}
+	}
+
+	/**
+	 * True if B can be cached: square, doubly stochastic with non-negative
+	 * entries, and mixing, i.e. its SLEM is below one. A matrix from a failed
+	 * build (the identity, a negative self weight) would otherwise be reused
+	 * by every later run on the same overlay.
+	 */
+	public static boolean isValid(double[][] B, double slem) {
+		int n = B.length;
+		if(n == 0 || !(slem < 1.0)) return false;
+		double[] cols = new double[n];
+		for(int i=0;i<n;i++) {
+			if(B[i].length != n) return false;
+			double row = 0.0;
+			for(int j=0;j<n;j++) {
+				if(!(B[i][j] >= -TOLERANCE)) return false;
+				row += B[i][j];
+				cols[j] += B[i][j];
+			}
+			if(Math.abs(row - 1.0) > TOLERANCE) return false;
+		}
+		for(int j=0;j<n;j++) {
+			if(Math.abs(cols[j] - 1.0) > TOLERANCE) return false;
+		}
+		return true;
+	}
+
+	/** Stores B under key, then evicts the oldest entries above capacity */
+	public void put(String key, double[][] B) {
+		File tmp = new File(dir, key + SUFFIX + ".tmp");
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+			out.writeInt(MAGIC);
+			out.writeInt(B.length);
+			for(int i=0;i<B.length;i++) {
+				int nnz = 0;
+				for(int j=0;j<B[i].length;j++) if(B[i][j] != 0.0) nnz++;
+				out.writeInt(nnz);
+				for(int j=0;j<B[i].length;j++) {
+					if(B[i][j] != 0.0) {
+						out.writeInt(j);
+						out.writeDouble(B[i][j]);
+					}
+				}
+			}
+			out.close();
+			out = null;
+			// readers never see a half written matrix
+			File f = new File(dir, key + SUFFIX);
+			f.delete();
+			if(!tmp.renameTo(f)) tmp.delete();
+		}
+		catch (IOException ioe) {
+			ioe.printStackTrace();
+			tmp.delete();
+		}
+		finally {
+			close(out);
+		}
+		evict();
+	}
+
+	/** Deletes the least recently used matrices above capacity */
+	private void evict() {
+		File[] files = dir.listFiles();
+		if(files == null) return;
+		List<File> entries = new ArrayList<File>();
+		for(File f : files) {
+			if(f.getName().endsWith(SUFFIX)) entries.add(f);
+		}
+		if(entries.size() <= capacity) return;
+		Collections.sort(entries, new Comparator<File>() {
+			public int compare(File a, File b) {
+				return Long.compare(a.lastModified(), b.lastModified());
+			}
+		});
+		for(int i=0;i<entries.size() - capacity;i++) {
+			entries.get(i).delete();
+		}
+	}
+
+	private static void close(java.io.Closeable c) {
+		if(c == null) return;
+		try { c.close(); }
+		catch (IOException ioe) {
+			ioe.printStackTrace();
+		}
+	}
+}
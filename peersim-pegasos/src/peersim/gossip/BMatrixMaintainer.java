@@ -0,0 +1,225 @@
+/*
+ * Peersim-Gadget : A Gadget protocol implementation in peersim based on the paper
+ * Chase Henzel, Haimonti Dutta
+ * GADGET SVM: A Gossip-bAseD sub-GradiEnT SVM Solver
+ *
+ * Copyright (C) 2012
+ * Deepak Nayak
+ * Columbia University, Computer Science MS'13
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package peersim.gossip;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Set;
+
+import peersim.core.Linkable;
+import peersim.core.Node;
+
+/**
+ * Class BMatrixMaintainer
+ * Keeps optimalB in line with an overlay that changes over time, like the
+ * caches of SimpleNewscast. It remembers the view of every node as it was when
+ * B was last touched; when a node's view differs, only the links of that node
+ * and of its old and new reciprocal neighbours are recomputed, with the
+ * Metropolis-Hastings rule of {@link MetropolisBMatrix}, and the self weights
+ * of those nodes and of their neighbours absorb the difference. Links that did
+ * not change keep the weights of the full solve, which acts as a warm start,
+ * unless a neighbour's links would then weigh more than 1: that neighbour is
+ * reweighted entirely with the same rule, so B stays symmetric and doubly
+ * stochastic with non-negative entries.
+ */
+public class BMatrixMaintainer {
+
+	/** Linkable identifier */
+	private final int lid;
+
+	/** sorted view of every node, as last seen */
+	private final int[][] views;
+
+	/** reciprocal links between the last seen views */
+	private final int[][] mutual;
+
+	/** number of local updates done so far */
+	private int updates = 0;
+
+	/** rows whose links of the full solve were all replaced to stay stochastic */
+	private int reweighted = 0;
+
+	/** Round-off allowed on a self weight before B is declared broken */
+	private static final double TOLERANCE = 1e-12;
+
+	/** Takes the current overlay as the one B was built for */
+	public BMatrixMaintainer(int lid) {
+		this.lid = lid;
+		views = Overlay.neighbours(lid);
+		for(int[] v : views) Arrays.sort(v);
+		mutual = Overlay.mutual(views);
+	}
+
+	private BMatrixMaintainer(int lid, int[][] views, int[][] mutual) {
+		this.lid = lid;
+		this.views = views;
+		this.mutual = mutual;
+	}
+
+	/** Writes the views B was last updated for, see {@link CheckpointControl} */
+	void save(DataOutput out) throws IOException {
+		out.writeInt(lid);
+		CheckpointControl.writeTable(out, views);
+		CheckpointControl.writeTable(out, mutual);
+		out.writeInt(updates);
+		out.writeInt(reweighted);
+	}
+
+	/** Reads what {@link #save} wrote */
+	static BMatrixMaintainer load(DataInput in) throws IOException {
+		BMatrixMaintainer m = new BMatrixMaintainer(in.readInt(), CheckpointControl.readTable(in),
+				CheckpointControl.readTable(in));
+		m.updates = in.readInt();
+		m.reweighted = in.readInt();
+		return m;
+	}
+
+	/** The nodes linked to node i in B, its reciprocal neighbours */
+	int[] getLinks(int i) { return mutual[i]; }
+
+	/** Number of local updates done so far */
+	public int getUpdates() { return updates; }
+
+	/**
+	 * Number of rows beyond the changed links whose weights were all replaced
+	 * by the Metropolis ones to keep B stochastic
+	 */
+	public int getReweighted() { return reweighted; }
+
+	/**
+	 * Updates B if the view of node changed since it was last seen.
+	 * @return true if B was modified
+	 */
+	public boolean update(double[][] B, Node node) {
+		int i = (int)node.getID();
+		Linkable l = (Linkable) node.getProtocol(lid);
+		int[] view = new int[l.degree()];
+		for(int k=0;k<view.length;k++) view[k] = (int)l.getNeighbor(k).getID();
+		Arrays.sort(view);
+		if(Arrays.equals(view, views[i])) return false;
+		views[i] = view;
+
+		int[] oldMutual = mutual[i];
+		Set<Integer> newMutual = new LinkedHashSet<Integer>();
+		for(int j : view) {
+			if(j != i && Arrays.binarySearch(views[j], i) >= 0) newMutual.add(j);
+		}
+		// the links that disappear carry no weight anymore
+		for(int j : oldMutual) {
+			B[i][j] = 0.0;
+			B[j][i] = 0.0;
+			if(!newMutual.contains(j)) mutual[j] = remove(mutual[j], i);
+		}
+		int[] oldSorted = sorted(oldMutual);
+		for(int j : newMutual) {
+			if(Arrays.binarySearch(oldSorted, j) < 0) mutual[j] = add(mutual[j], i);
+		}
+		mutual[i] = toArray(newMutual);
+
+		// the degrees of i and of its old and new neighbours changed, so all
+		// their links get new weights
+		Set<Integer> affected = new LinkedHashSet<Integer>();
+		affected.add(i);
+		for(int j : oldMutual) affected.add(j);
+		affected.addAll(newMutual);
+		Set<Integer> touched = new LinkedHashSet<Integer>(affected);
+		for(int a : affected) {
+			for(int b : mutual[a]) {
+				double w = MetropolisBMatrix.weight(mutual[a].length, mutual[b].length);
+				B[a][b] = w;
+				B[b][a] = w;
+				touched.add(b);
+			}
+		}
+		// a neighbour whose other links kept the weights of the full solve may
+		// now have more than 1 off the diagonal: all its links then get the
+		// Metropolis weights too, which may in turn overflow its neighbours.
+		// A row with only Metropolis links never overflows, so this stops
+		// after at most n rows.
+		Set<Integer> metropolis = new LinkedHashSet<Integer>(affected);
+		LinkedList<Integer> work = new LinkedList<Integer>(touched);
+		while(!work.isEmpty()) {
+			int c = work.removeFirst();
+			if(metropolis.contains(c) || offDiagonal(B, c) <= 1.0) continue;
+			metropolis.add(c);
+			for(int b : mutual[c]) {
+				double w = MetropolisBMatrix.weight(mutual[c].length, mutual[b].length);
+				B[c][b] = w;
+				B[b][c] = w;
+				touched.add(b);
+				if(!metropolis.contains(b)) work.add(b);
+			}
+			reweighted++;
+		}
+		for(int c : touched) {
+			B[c][c] = 1.0 - offDiagonal(B, c);
+			// B is symmetric, so rows and columns sum to one as long as the
+			// self weights are not negative
+			if(B[c][c] < -TOLERANCE)
+				throw new IllegalStateException("B is not stochastic anymore, B["
+						+ c + "][" + c + "] = " + B[c][c]);
+			if(B[c][c] < 0.0) B[c][c] = 0.0;
+		}
+		updates++;
+		return true;
+	}
+
+	private static double offDiagonal(double[][] B, int c) {
+		double sum = 0.0;
+		for(int j=0;j<B[c].length;j++) {
+			if(j != c) sum += B[c][j];
+		}
+		return sum;
+	}
+
+	private static int[] sorted(int[] a) {
+		int[] s = a.clone();
+		Arrays.sort(s);
+		return s;
+	}
+
+	private static int[] add(int[] a, int v) {
+		int[] r = Arrays.copyOf(a, a.length + 1);
+		r[a.length] = v;
+		return r;
+	}
+
+	private static int[] remove(int[] a, int v) {
+		int[] r = new int[a.length];
+		int d = 0;
+		for(int x : a) if(x != v) r[d++] = x;
+		return Arrays.copyOf(r, d);
+	}
+
+	private static int[] toArray(Set<Integer> set) {
+		int[] r = new int[set.size()];
+		int d = 0;
+		for(int x : set) r[d++] = x;
+		return r;
+	}
+}
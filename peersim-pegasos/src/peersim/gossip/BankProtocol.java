@@ -0,0 +1,287 @@
+/*
+ * Peersim-Gadget : A Gadget protocol implementation in peersim based on the paper
+ * Chase Henzel, Haimonti Dutta
+ * GADGET SVM: A Gossip-bAseD sub-GradiEnT SVM Solver
+ *
+ * Copyright (C) 2012
+ * Deepak Nayak
+ * Columbia University, Computer Science MS'13
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package peersim.gossip;
+
+import jnisvmlight.LabeledFeatureVector;
+
+import peersim.config.Configuration;
+import peersim.config.FastConfig;
+import peersim.core.*;
+import peersim.cdsim.*;
+
+/**
+ * Class BankProtocol
+ * Base of the GADGET variants training several linear models at once. Every
+ * node keeps the models in a {@link WeightBank}. An iteration reads every
+ * point of the shard once to test the margins of all the models, then the
+ * banks are averaged with random neighbours for protocol.1.rounds cycles,
+ * each exchange sending the whole bank as one array, and every model is
+ * projected on its own ball. Model k has its own lambda and its own view of
+ * the labels, given by the subclass.
+ * <p>
+ * After protocol.1.iter iterations the nodes hold the average of their
+ * iterates; the objective and training error of every model are summed over
+ * the nodes and handed to {@link #report}.
+ * <p>
+ * With protocol.1.offheap the banks of all nodes are rows of one
+ * {@link WeightArena} outside the heap; give the JVM enough
+ * -XX:MaxDirectMemorySize for 2 * nodes * features * models doubles.
+ */
+public abstract class BankProtocol implements CDProtocol {
+	/**
+	 * Config option to get the number of iterations
+	 * @config
+	 */
+	private static final String PAR_ITERATION = "iter";
+	/**
+	 * Config option giving the number of push-sum cycles per iteration,
+	 * defaults to 20
+	 * @config
+	 */
+	private static final String PAR_ROUNDS = "rounds";
+	/**
+	 * Config option, if present the banks are stored off the heap
+	 * @config
+	 */
+	private static final String PAR_OFFHEAP = "offheap";
+	/**
+	 * Config option giving the size in MB of the off-heap slabs, defaults to
+	 * 256
+	 * @config
+	 */
+	private static final String PAR_SLAB = "slab";
+
+	/** Feature dimension of the banks, the same for all nodes */
+	private static int dim = -1;
+
+	/**
+	 * Sums over the nodes, per model, of the regularizer averaged over the
+	 * nodes, the hinge losses and the errors of the final models
+	 */
+	protected static double[] regularizer;
+
+	protected static double[] hinge;
+
+	protected static double[] errors;
+
+	protected static long points = 0;
+
+	private static int finished = 0;
+
+	/** Storage of the banks of all nodes when off the heap */
+	private static WeightArena arena;
+
+	/**
+	 * The loss terms of a step; nodes step one at a time, so one is shared
+	 * by all of them
+	 */
+	private static WeightBank loss;
+
+	/** Linkable identifier */
+	protected int lid;
+	/** Number of iterations (T in gadget) */
+	protected int T;
+
+	protected int rounds;
+
+	protected boolean offheap;
+
+	protected long slab;
+
+	protected WeightBank bank;
+
+	private WeightBank primal;
+
+	private boolean done = false;
+
+	public BankProtocol(String prefix) {
+		T = Configuration.getInt(prefix + "." + PAR_ITERATION, 100);
+		rounds = Configuration.getInt(prefix + "." + PAR_ROUNDS, 20);
+		lid = FastConfig.getLinkable(CommonState.getPid());
+		offheap = Configuration.contains(prefix + "." + PAR_OFFHEAP);
+		slab = Configuration.getLong(prefix + "." + PAR_SLAB, WeightArena.SLAB_BYTES >> 20) << 20;
+	}
+
+	public Object clone() {
+		BankProtocol bp = null;
+		try { bp = (BankProtocol)super.clone(); }
+		catch( CloneNotSupportedException e ) {} // never happens
+		// banks are allocated at the first cycle, once the data is known
+		bp.bank = null;
+		bp.primal = null;
+		return bp;
+	}
+
+	/** Number of models, called once the data of all nodes is loaded */
+	protected abstract int models();
+
+	/** Lambda of model k */
+	protected abstract double lambda(int k);
+
+	/** Label, +1 or -1, of the point x for model k */
+	protected abstract double label(LabeledFeatureVector x, int k);
+
+	/**
+	 * Called on the last node to finish, with the sums over the nodes of
+	 * {@link #regularizer}, {@link #hinge} and {@link #errors} per model
+	 */
+	protected abstract void report(int pid);
+
+	/** Sets the starting models of the node, all zero by default */
+	protected void init(PegasosNode pn) {
+	}
+
+	/** Called for every point with the margins of the final models */
+	protected void evaluate(LabeledFeatureVector x, double[] margins) {
+	}
+
+	/** The models of this node, the final ones once done */
+	public WeightBank getBank() {
+		return bank;
+	}
+
+	public void nextCycle(Node node, int pid) {
+		PegasosNode pn = (PegasosNode)node;
+		if(bank == null) {
+			if(dim < 0) dim = WeightBank.maxFeature() + 1;
+			int K = models();
+			bank = newBank(K);
+			primal = newBank(K);
+			if(loss == null || loss.getModels() != K) loss = new WeightBank(dim, K);
+			init(pn);
+		}
+		int K = bank.getModels();
+		int period = rounds + 2;
+		int time = CommonState.getIntTime();
+		int t = time / period + 1;
+		int phase = time % period;
+		if(t > T) {
+			if(!done) finish(pn, pid);
+			return;
+		}
+		if(phase == 0) {
+			step(pn, t);
+		}
+		else if(phase <= rounds) {
+			Node peer = selectNeighbor(node);
+			if(peer != null && peer.isUp()) {
+				bank.average(((BankProtocol)peer.getProtocol(pid)).bank);
+				RunStats.addBytes(2 * bank.getBytes());
+			}
+		}
+		else {
+			// projection of every model on its ball, then the running sums
+			double[] norms = bank.norms();
+			double[] scale = new double[K];
+			double[] one = new double[K];
+			for (int k = 0; k < K; k++) {
+				scale[k] = (norms[k] == 0.0) ? 1.0 : Math.min(1.0, 1.0 / (Math.sqrt(lambda(k)) * norms[k]));
+				one[k] = 1.0;
+			}
+			bank.scale(scale);
+			primal.combine(one, bank, one);
+		}
+	}
+
+	/**
+	 * The GADGET step of every model, w_k = (1 - lambda_k*alpha_k) * N * w_k
+	 * + alpha_k * L_k, the margins of all models coming from one read of each
+	 * point.
+	 */
+	private void step(PegasosNode pn, int t) {
+		int K = bank.getModels();
+		LabeledFeatureVector[] data = pn.getShard();
+		int N = data.length;
+		double[] margins = new double[K];
+		double[] coef = new double[K];
+		loss.clear();
+		for (LabeledFeatureVector x : data) {
+			bank.margins(x, margins);
+			boolean inside = false;
+			for (int k = 0; k < K; k++) {
+				double y = label(x, k);
+				coef[k] = (y * margins[k] < 1) ? y : 0.0;
+				inside |= coef[k] != 0.0;
+			}
+			if(inside) loss.addPoint(x, coef);
+		}
+		double[] decay = new double[K];
+		double[] alpha = new double[K];
+		for (int k = 0; k < K; k++) {
+			alpha[k] = 1.0 / (lambda(k) * t);
+			decay[k] = (1 - lambda(k) * alpha[k]) * N;
+		}
+		bank.combine(decay, loss, alpha);
+	}
+
+	/** Final models primal/T, and this node's share of the report */
+	private void finish(PegasosNode pn, int pid) {
+		int K = bank.getModels();
+		double[] inv = new double[K];
+		for (int k = 0; k < K; k++) inv[k] = 1.0 / T;
+		primal.scale(inv);
+		bank = primal;
+		done = true;
+		if(regularizer == null) {
+			regularizer = new double[K];
+			hinge = new double[K];
+			errors = new double[K];
+		}
+		double[] norms = bank.norms();
+		double[] margins = new double[K];
+		LabeledFeatureVector[] data = pn.getShard();
+		for (LabeledFeatureVector x : data) {
+			bank.margins(x, margins);
+			for (int k = 0; k < K; k++) {
+				double ym = label(x, k) * margins[k];
+				hinge[k] += Math.max(0.0, 1 - ym);
+				if(ym <= 0) errors[k]++;
+			}
+			evaluate(x, margins);
+		}
+		points += data.length;
+		for (int k = 0; k < K; k++)
+			regularizer[k] += lambda(k) / 2 * norms[k] * norms[k] / Network.size();
+		if(++finished == Network.size()) {
+			if(arena != null)
+				System.out.println("[arena] " + arena.getRows() + " banks, "
+						+ arena.getBytes() / (1 << 20) + " MB off the heap");
+			report(pid);
+		}
+	}
+
+	/** A zero bank, in the arena when off the heap */
+	private WeightBank newBank(int K) {
+		if(!offheap) return new WeightBank(dim, K);
+		if(arena == null) arena = new WeightArena(dim * K, slab);
+		return new WeightBank(dim, K, arena.allocate());
+	}
+
+	private Node selectNeighbor(Node node) {
+		Linkable linkable = (Linkable) node.getProtocol(lid);
+		if (linkable.degree() > 0)
+			return linkable.getNeighbor(CommonState.r.nextInt(linkable.degree()));
+		return null;
+	}
+}
@@ -0,0 +1,63 @@
+/*
+ * Peersim-Gadget : A Gadget protocol implementation in peersim based on the paper
+ * Chase Henzel, Haimonti Dutta
+ * GADGET SVM: A Gossip-bAseD sub-GradiEnT SVM Solver
+ *
+ * Copyright (C) 2012
+ * Deepak Nayak
+ * Columbia University, Computer Science MS'13
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package peersim.gossip;
+
+/**
+ * Class BestConstantBMatrix
+ * Best constant edge weight B = I - a*L, L being the Laplacian of the
+ * reciprocal links, with a = 2/(l_1(L) + l_n-1(L)) (Xiao and Boyd, "Fast linear
+ * iterations for distributed averaging"). Both Laplacian eigenvalues come from
+ * one Lanczos run, so this costs a few hundred sparse products.
+ */
+public class BestConstantBMatrix extends BMatrixBuilder {
+
+	public String getName() { return BESTCONSTANT; }
+
+	public double[][] build(int lid) {
+		final int[][] mut = Overlay.mutual(Overlay.neighbours(lid));
+		final int n = mut.length;
+		Spectral.Operator laplacian = new Spectral.Operator() {
+			public int size() { return n; }
+			public void apply(double[] x, double[] y) {
+				for(int i=0;i<n;i++) {
+					double v = mut[i].length * x[i];
+					for(int j : mut[i]) v -= x[j];
+					y[i] = v;
+				}
+			}
+		};
+		double[] ext = Spectral.extremes(laplacian, Spectral.MAX_ITER, Spectral.TOLERANCE);
+		double ln1 = ext[0];
+		double l1 = ext[1];
+		double a = (l1 + ln1 > 0.0) ? 2.0 / (l1 + ln1) : 0.0;
+		double[][] B = new double[n][n];
+		for(int i=0;i<n;i++) {
+			for(int j : mut[i]) {
+				B[i][j] = a;
+			}
+		}
+		fillDiagonal(B);
+		return B;
+	}
+}
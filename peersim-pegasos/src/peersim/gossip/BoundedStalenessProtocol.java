@@ -0,0 +1,319 @@
+/*
+ * Peersim-Gadget : A Gadget protocol implementation in peersim based on the paper
+ * Chase Henzel, Haimonti Dutta
+ * GADGET SVM: A Gossip-bAseD sub-GradiEnT SVM Solver
+ *
+ * Copyright (C) 2012
+ * Deepak Nayak
+ * Columbia University, Computer Science MS'13
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package peersim.gossip;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import jnipegasos.PrimalSVMWeights;
+
+import peersim.config.Configuration;
+import peersim.config.FastConfig;
+import peersim.core.*;
+import peersim.cdsim.*;
+
+/**
+ * Class BoundedStalenessProtocol
+ * GADGET without the global iteration counter of {@link GadgetProtocol4}.
+ * Every node runs its own iterations: a local step that takes a number of
+ * cycles given by its shard size and its speed, one push-sum exchange with a
+ * random neighbour, whose weights may be up to s iterations old, then the
+ * projection. The exchange is push-sum on (N * w, N) pairs, N the shard
+ * size, so the nodes tend to the average weighted by the shard sizes and a
+ * node's vector is always the ratio, whatever its shard. A node may start
+ * iteration t only if every neighbour has started iteration t-s, so fast
+ * nodes run at most s iterations ahead of their neighbours instead of
+ * waiting for the slowest node of the network at every iteration. s = 0
+ * only syncs with the neighbours.
+ * <p>
+ * The speed profile (protocol.1.speed) is uniform, stragglers (a fraction
+ * protocol.1.stragglers of the nodes is protocol.1.slowdown times slower)
+ * or random (slowdowns uniform in [1, protocol.1.slowdown]). Shard sizes are
+ * set with network.node.skew. At the end it prints the cycles taken, the
+ * idle cycles spent waiting for neighbours, and the cycles the lockstep
+ * schedule of GadgetProtocol4 would need for the same local steps, once
+ * every node that is still up has completed its iterations.
+ */
+public class BoundedStalenessProtocol implements CDProtocol {
+	/**
+	 * Config option to get the learning parameter lambda
+	 * @config
+	 */
+	private static final String PAR_LAMBDA = "lambda";
+	/**
+	 * Config option to get the number of iterations
+	 * @config
+	 */
+	private static final String PAR_ITERATION = "iter";
+	/**
+	 * Config option giving how many iterations a node may run ahead of its
+	 * neighbours, defaults to 1
+	 * @config
+	 */
+	private static final String PAR_STALENESS = "staleness";
+	/**
+	 * Config option giving the speed profile of the nodes: uniform (default),
+	 * stragglers or random
+	 * @config
+	 */
+	private static final String PAR_SPEED = "speed";
+	/**
+	 * Config option giving how many times slower than the others the slowest
+	 * nodes are, defaults to 10
+	 * @config
+	 */
+	private static final String PAR_SLOWDOWN = "slowdown";
+	/**
+	 * Config option giving the fraction of straggling nodes of the stragglers
+	 * profile, defaults to 0.1
+	 * @config
+	 */
+	private static final String PAR_STRAGGLERS = "stragglers";
+
+	/** Iterations completed by the slowest node, for the reports */
+	private static int minDone = 0;
+
+	/** Whether the end of the run was reported */
+	private static boolean reported = false;
+
+	/** Sum over the iterations of the slowest local step, what lockstep costs */
+	private static long lockstepCycles = 0;
+
+	private static long idleCycles = 0;
+
+	/** Average shard size, the unit of the step durations */
+	private static double meanShard = -1;
+
+	/** Linkable identifier */
+	protected int lid;
+	/** Learning parameter, as for GADGET */
+	protected double lambda;
+	/** Number of iterations (T in gadget) */
+	protected int T;
+
+	private int staleness;
+
+	private String speed;
+
+	private double slowdown;
+
+	private double stragglers;
+
+	/** Iteration of this node, from 1 */
+	private int t = 1;
+
+	/** Cycles left in the current local step, 0 when not started */
+	private int busy = 0;
+
+	/** Slowdown factor of this node, drawn at its first cycle */
+	private double factor = -1;
+
+	private LocalSolver solver;
+
+	/** Running sum of the iterates, read it with {@link #primal()} */
+	private PrimalSVMWeights primalSVMWeights;
+
+	/** Slot of the running sum when the weights are in the arena */
+	private SparseArena.Slot primalSlot;
+
+	public BoundedStalenessProtocol(String prefix) {
+		lambda = Configuration.getDouble(prefix + "." + PAR_LAMBDA, 0.01);
+		T = Configuration.getInt(prefix + "." + PAR_ITERATION, 100);
+		lid = FastConfig.getLinkable(CommonState.getPid());
+		staleness = Configuration.getInt(prefix + "." + PAR_STALENESS, 1);
+		speed = Configuration.getString(prefix + "." + PAR_SPEED, "uniform");
+		slowdown = Configuration.getDouble(prefix + "." + PAR_SLOWDOWN, 10.0);
+		stragglers = Configuration.getDouble(prefix + "." + PAR_STRAGGLERS, 0.1);
+		solver = LocalSolver.create(prefix);
+		primalSVMWeights = new PrimalSVMWeights(new TreeMap<Integer, Double>());
+	}
+
+	public Object clone() {
+		BoundedStalenessProtocol bp = null;
+		try { bp = (BoundedStalenessProtocol)super.clone(); }
+		catch( CloneNotSupportedException e ) {} // never happens
+		bp.solver = (LocalSolver)solver.clone();
+		bp.primalSlot = null;
+		bp.setPrimal(new PrimalSVMWeights(new TreeMap<Integer, Double>()));
+		return bp;
+	}
+
+	public void nextCycle(Node node, int pid) {
+		PegasosNode pn = (PegasosNode)node;
+		if(t > T) return;
+		if(factor < 0) {
+			if(speed.equals("stragglers"))
+				factor = (CommonState.r.nextDouble() < stragglers) ? slowdown : 1.0;
+			else if(speed.equals("random"))
+				factor = 1.0 + (slowdown - 1.0) * CommonState.r.nextDouble();
+			else
+				factor = 1.0;
+		}
+		if(busy == 0) {
+			if(!canStart(node, pid)) {
+				idleCycles++;
+				return;
+			}
+			busy = duration(pn);
+		}
+		if(--busy > 0) return;
+
+		// the step completes in this cycle
+		solver.step(pn, lambda, t);
+		// the step leaves N * w in pn: push-sum on the pairs (N * w, N) and
+		// (weight * w, weight) of the peer, whose vector is a ratio
+		double mass = pn.getShardSize();
+		TreeMap<Integer, Double> a = pn.getWtvector().getWeights();
+		Node peer = selectNeighbor(node, pid);
+		if(peer != null) {
+			PegasosNode pp = (PegasosNode)peer;
+			TreeMap<Integer, Double> b = pp.getWtvector().getWeights();
+			RunStats.addEntries(a.size() + b.size());
+			scale(b, pp.weight);
+			GadgetProtocol4.average(a, b);
+			mass = (mass + pp.weight) / 2;
+			scale(b, 1.0 / mass);
+			pp.weight = mass;
+		}
+		scale(a, 1.0 / mass);
+		pn.weight = mass;
+		GadgetProtocol4.project(pn, lambda, primal());
+		t++;
+		if(t > T) {
+			TreeMap<Integer, Double> sum = primal().getWeights();
+			for (Map.Entry<Integer, Double> entry : pn.getWtvector().getWeights().entrySet()) {
+				Double p = sum.get(entry.getKey());
+				entry.setValue((p == null) ? 0.0 : p / T);
+			}
+			if(!reported && allFinished(pid)) {
+				reported = true;
+				report();
+			}
+		}
+		advance(pid);
+	}
+
+	/** True if every node that is up completed its iterations */
+	private static boolean allFinished(int pid) {
+		for(int i=0;i<Network.size();i++) {
+			Node n = Network.get(i);
+			BoundedStalenessProtocol other = (BoundedStalenessProtocol)n.getProtocol(pid);
+			if(n.isUp() && other.t <= other.T) return false;
+		}
+		return true;
+	}
+
+	/** Cycles one local step of this node takes, at least one */
+	private int duration(PegasosNode pn) {
+		if(meanShard < 0) {
+			double total = 0;
+			for(int i=0;i<Network.size();i++)
+				total += ((PegasosNode)Network.get(i)).getShardSize();
+			meanShard = Math.max(1.0, total / Network.size());
+		}
+		return Math.max(1, (int)Math.round(factor * pn.getShardSize() / meanShard));
+	}
+
+	/** True if no neighbour that is up lags more than staleness iterations */
+	private boolean canStart(Node node, int pid) {
+		Linkable linkable = (Linkable) node.getProtocol(lid);
+		for(int i=0;i<linkable.degree();i++) {
+			Node peer = linkable.getNeighbor(i);
+			if(!peer.isUp()) continue;
+			BoundedStalenessProtocol other = (BoundedStalenessProtocol)peer.getProtocol(pid);
+			if(other.t <= T && t - other.t > staleness) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * When the slowest node completes an iteration, adds the slowest step of
+	 * that iteration to the lockstep cost and reports the metrics.
+	 */
+	private void advance(int pid) {
+		int min = Integer.MAX_VALUE;
+		int slowest = 0;
+		for(int i=0;i<Network.size();i++) {
+			Node n = Network.get(i);
+			if(!n.isUp()) continue;
+			BoundedStalenessProtocol other = (BoundedStalenessProtocol)n.getProtocol(pid);
+			min = Math.min(min, other.t - 1);
+			if(other.factor > 0)
+				slowest = Math.max(slowest, other.duration((PegasosNode)n));
+		}
+		while(minDone < min && minDone < T) {
+			minDone++;
+			// lockstep: the slowest step, one push-sum cycle and the projection
+			lockstepCycles += slowest + 2;
+			RunStats.report("staleness", minDone, lambda);
+		}
+	}
+
+	private void report() {
+		long cycles = CommonState.getTime() + 1;
+		System.out.println("[staleness] s=" + staleness + ", speed " + speed
+				+ ": " + T + " iterations in " + cycles + " cycles, "
+				+ idleCycles + " idle node cycles; lockstep with one exchange per"
+				+ " iteration would take " + lockstepCycles + " cycles, speedup "
+				+ (double)lockstepCycles / cycles);
+	}
+
+	private static void scale(TreeMap<Integer, Double> w, double f) {
+		for (Map.Entry<Integer, Double> entry : w.entrySet())
+			entry.setValue(f * entry.getValue());
+	}
+
+	/**
+	 * A random neighbour that is up and still iterating: the vector of a node
+	 * that finished is its averaged model, which must not be mixed anymore
+	 */
+	private Node selectNeighbor(Node node, int pid) {
+		Linkable linkable = (Linkable) node.getProtocol(lid);
+		List<Node> running = new ArrayList<Node>(linkable.degree());
+		for(int i=0;i<linkable.degree();i++) {
+			Node peer = linkable.getNeighbor(i);
+			BoundedStalenessProtocol other = (BoundedStalenessProtocol)peer.getProtocol(pid);
+			if(peer.isUp() && other.t <= other.T) running.add(peer);
+		}
+		if(running.isEmpty()) return null;
+		return running.get(CommonState.r.nextInt(running.size()));
+	}
+
+	/** The running sum of the iterates, in the arena with the weights */
+	private PrimalSVMWeights primal() {
+		return (primalSlot != null) ? primalSlot.get() : primalSVMWeights;
+	}
+
+	private void setPrimal(PrimalSVMWeights w) {
+		SparseArena arena = PegasosNode.getArena();
+		if(arena == null) primalSVMWeights = w;
+		else if(primalSlot == null) {
+			primalSVMWeights = null;
+			primalSlot = arena.newSlot(w);
+		}
+		else primalSlot.set(w);
+	}
+}
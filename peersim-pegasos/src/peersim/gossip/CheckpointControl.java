@@ -0,0 +1,339 @@
+/*
+ * Peersim-Gadget : A Gadget protocol implementation in peersim based on the paper
+ * Chase Henzel, Haimonti Dutta
+ * GADGET SVM: A Gossip-bAseD sub-GradiEnT SVM Solver
+ *
+ * Copyright (C) 2012
+ * Deepak Nayak
+ * Columbia University, Computer Science MS'13
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package peersim.gossip;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.Map;
+
+import jnipegasos.PrimalSVMWeights;
+
+import newscast.SimpleNewscast;
+import peersim.config.*;
+import peersim.core.*;
+
+/**
+ * Saves the state of a GADGET run every control.X.step cycles, so that a run
+ * whose JVM died can be resumed. A checkpoint holds the random generator of
+ * the simulation, the iteration state of {@link GadgetProtocol4}, with
+ * optimalB as the maintainer of protocol.1.dynamic left it, its SLEM, the
+ * views of the maintainer and the clusters of the hierarchical protocol, and,
+ * for every node, its fail state, weight vector, push-sum weight and the state
+ * of its protocol and local solver, and the views of the newscast overlays,
+ * which change every cycle. The state is copied into memory while the
+ * simulation waits, and written to disk by a background thread: first to
+ * &lt;file&gt;.tmp, then renamed, so a crash never leaves a half written
+ * checkpoint. Vectors are stored exactly, with the raw
+ * precision of {@link SparseVectorCodec}.
+ * <p>
+ * The simulator keeps references to the random generator, so it cannot be
+ * replaced on resume, and its state cannot be read. Instead, a checkpoint
+ * reseeds the generator with a seed drawn from it and saves that seed: a
+ * run taking checkpoints draws other numbers than the same run without
+ * them, but a resumed run draws exactly the numbers of the run it resumes.
+ * <p>
+ * To resume, the same configuration is run with this class as the last
+ * initializer and {@value #PAR_RESUME} set: the nodes and the overlay are
+ * built again from the configuration, then the checkpoint is loaded over
+ * them. simulation.cycles must be the cycles left. The checkpoint control
+ * can stay in the configuration: it skips cycle 0 of the resumed run, which
+ * is the checkpoint just loaded, instead of reseeding the generator again,
+ * and goes on saving every step cycles. Since the controls of a cycle run
+ * before its protocols, the checkpoint control must run before the other
+ * controls (see order.control) for the resumed run to repeat the original
+ * one exactly. The shards are not saved, so runs using
+ * {@link StreamSource} cannot be resumed, and the margins cache of
+ * protocol.1.margins incremental is rebuilt, which can change the last bits.
+ * <p>
+ * A checkpoint is a full snapshot, not an incremental or copy-on-write one:
+ * the whole network, optimalB included, is serialized into a byte array on
+ * the simulation thread, so a checkpoint takes as much memory as the encoded
+ * state and stops the simulation for the time of the encoding; only the
+ * disk write runs in the background.
+ */
+public class CheckpointControl implements Control {
+
+    // /////////////////////////////////////////////////////////////////////
+    // Constants
+    // /////////////////////////////////////////////////////////////////////
+
+    /**
+     * The protocol to save, a {@link GadgetProtocol4}.
+     * 
+     * @config
+     */
+    private static final String PAR_PROT = "protocol";
+
+    /**
+     * The checkpoint file.
+     * 
+     * @config
+     */
+    private static final String PAR_FILE = "file";
+
+    /**
+     * If present, the checkpoint is loaded instead of being saved.
+     * 
+     * @config
+     */
+    private static final String PAR_RESUME = "resume";
+
+    /** First int of a checkpoint, "GCK3" */
+    public static final int MAGIC = 0x47434b33;
+
+    // /////////////////////////////////////////////////////////////////////
+    // Fields
+    // /////////////////////////////////////////////////////////////////////
+
+    /** The name of this control in the configuration */
+    private final String name;
+
+    private final int pid;
+
+    private final File file;
+
+    private final boolean resume;
+
+    /** the thread writing the last checkpoint */
+    private Thread writer = null;
+
+    /**
+     * Set when a checkpoint was loaded: the saving control of the resumed run
+     * then skips cycle 0, which the loaded checkpoint already is, since saving
+     * would reseed the generator a second time.
+     */
+    private static boolean resumed = false;
+
+    // /////////////////////////////////////////////////////////////////////
+    // Constructor
+    // /////////////////////////////////////////////////////////////////////
+
+    /**
+     * Creates a new control reading configuration parameters.
+     */
+    public CheckpointControl(String name) {
+        this.name = name;
+        pid = Configuration.getPid(name + "." + PAR_PROT);
+        file = new File(Configuration.getString(name + "." + PAR_FILE));
+        resume = Configuration.contains(name + "." + PAR_RESUME);
+    }
+
+    // /////////////////////////////////////////////////////////////////////
+    // Methods
+    // /////////////////////////////////////////////////////////////////////
+
+    /**
+     * Saves a checkpoint, or loads it when resuming.
+     * 
+     * @return always false, this control never stops the simulation.
+     */
+    public boolean execute() {
+        try {
+            if (resume) load();
+            else if (resumed && CommonState.getTime() == 0) resumed = false;
+            else if (!GadgetProtocol4.end) save();
+        } catch (IOException e) {
+            throw new RuntimeException(name + ": checkpoint " + file, e);
+        }
+        return false;
+    }
+
+    /** Copies the state into memory, then writes it in the background */
+    private void save() throws IOException {
+        long start = System.currentTimeMillis();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeLong(CommonState.getTime());
+        long seed = CommonState.r.nextLong();
+        CommonState.r.setSeed(seed);
+        out.writeLong(seed);
+        GadgetProtocol4.saveGlobals(out);
+        out.writeLong(RunStats.bytes);
+        out.writeInt(Network.size());
+        for (int i = 0; i < Network.size(); i++) {
+            PegasosNode pn = (PegasosNode) Network.get(i);
+            out.writeLong(pn.getID());
+            out.writeInt(pn.getFailState());
+            out.writeDouble(pn.weight);
+            out.writeInt(pn.misclassified);
+            SparseVectorCodec.write(out, pn.getWtvector().getWeights(), SparseVectorCodec.RAW);
+            ((GadgetProtocol4) pn.getProtocol(pid)).save(out);
+            for (int p = 0; p < pn.protocolSize(); p++) {
+                if (pn.getProtocol(p) instanceof SimpleNewscast)
+                    saveView(out, (SimpleNewscast) pn.getProtocol(p));
+            }
+        }
+        out.close();
+        final byte[] snapshot = bytes.toByteArray();
+        final long time = CommonState.getTime();
+        join();
+        writer = new Thread(name + "-writer") {
+            public void run() {
+                File tmp = new File(file.getPath() + ".tmp");
+                try {
+                    FileOutputStream fos = new FileOutputStream(tmp);
+                    try {
+                        fos.write(snapshot);
+                        fos.getFD().sync();
+                    } finally {
+                        fos.close();
+                    }
+                    if (!tmp.renameTo(file) && !(file.delete() && tmp.renameTo(file)))
+                        throw new IOException("cannot rename " + tmp);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        writer.start();
+        System.out.println(name + ": " + time + " checkpoint of " + snapshot.length
+                + " bytes taken in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /** Waits for the previous checkpoint to be on disk */
+    private void join() {
+        if (writer == null) return;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Loads the checkpoint over the nodes built from the configuration */
+    private void load() throws IOException {
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            if (in.readInt() != MAGIC)
+                throw new IOException(file + " is not a checkpoint");
+            long time = in.readLong();
+            CommonState.r.setSeed(in.readLong());
+            GadgetProtocol4.loadGlobals(in);
+            RunStats.bytes = in.readLong();
+            int n = in.readInt();
+            if (n != Network.size())
+                throw new IOException(file + " has " + n + " nodes, the network "
+                        + Network.size());
+            Map<Long, Node> nodes = new HashMap<Long, Node>();
+            for (int i = 0; i < Network.size(); i++)
+                nodes.put(Network.get(i).getID(), Network.get(i));
+            for (int i = 0; i < n; i++) {
+                PegasosNode pn = (PegasosNode) nodes.get(in.readLong());
+                if (pn == null)
+                    throw new IOException(file + " does not match the network");
+                int failstate = in.readInt();
+                if (failstate != Fallible.OK) pn.setFailState(failstate);
+                pn.weight = in.readDouble();
+                pn.misclassified = in.readInt();
+                pn.setWtvector(new PrimalSVMWeights(SparseVectorCodec.read(in)));
+                ((GadgetProtocol4) pn.getProtocol(pid)).load(in, nodes);
+                for (int p = 0; p < pn.protocolSize(); p++) {
+                    if (pn.getProtocol(p) instanceof SimpleNewscast)
+                        loadView(in, (SimpleNewscast) pn.getProtocol(p), nodes, (int) time);
+                }
+            }
+            resumed = true;
+            System.out.println(name + ": resumed from the checkpoint of cycle " + time);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes the view of a newscast node, its cache of peers and their
+     * timestamps. SimpleNewscast has no accessors for them, so they are
+     * reached by reflection.
+     */
+    private static void saveView(DataOutput out, SimpleNewscast view) throws IOException {
+        Node[] cache = (Node[]) viewField("cache", view);
+        int[] tstamps = (int[]) viewField("tstamps", view);
+        out.writeInt(cache.length);
+        for (int i = 0; i < cache.length; i++) {
+            out.writeLong((cache[i] == null) ? -1 : cache[i].getID());
+            out.writeInt(tstamps[i]);
+        }
+    }
+
+    /**
+     * Reads a view saved at cycle time; the resumed run starts again at cycle
+     * 0, so the timestamps, which newscast compares to keep the freshest
+     * peers, are moved back by time.
+     */
+    private static void loadView(DataInput in, SimpleNewscast view, Map<Long, Node> nodes,
+            int time) throws IOException {
+        Node[] cache = (Node[]) viewField("cache", view);
+        int[] tstamps = (int[]) viewField("tstamps", view);
+        if (in.readInt() != cache.length)
+            throw new IOException("newscast cache size changed");
+        for (int i = 0; i < cache.length; i++) {
+            long id = in.readLong();
+            cache[i] = (id < 0) ? null : nodes.get(id);
+            tstamps[i] = in.readInt() - time;
+        }
+    }
+
+    /** Writes an int array, length first */
+    static void writeInts(DataOutput out, int[] a) throws IOException {
+        out.writeInt(a.length);
+        for (int x : a) out.writeInt(x);
+    }
+
+    static int[] readInts(DataInput in) throws IOException {
+        int[] a = new int[in.readInt()];
+        for (int i = 0; i < a.length; i++) a[i] = in.readInt();
+        return a;
+    }
+
+    /** Writes a table of rows of any length, like the views of the overlay */
+    static void writeTable(DataOutput out, int[][] t) throws IOException {
+        out.writeInt(t.length);
+        for (int[] row : t) writeInts(out, row);
+    }
+
+    static int[][] readTable(DataInput in) throws IOException {
+        int[][] t = new int[in.readInt()][];
+        for (int i = 0; i < t.length; i++) t[i] = readInts(in);
+        return t;
+    }
+
+    private static Object viewField(String field, SimpleNewscast view) {
+        try {
+            Field f = SimpleNewscast.class.getDeclaredField(field);
+            f.setAccessible(true);
+            return f.get(view);
+        } catch (Exception e) {
+            throw new RuntimeException("cannot access the newscast " + field, e);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Peersim-Gadget : A Gadget protocol implementation in peersim based on the paper
+ * Chase Henzel, Haimonti Dutta
+ * GADGET SVM: A Gossip-bAseD sub-GradiEnT SVM Solver
+ *
+ * Copyright (C) 2012
+ * Deepak Nayak
+ * Columbia University, Computer Science MS'13
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package peersim.gossip;
+
+import peersim.config.*;
+import peersim.core.*;
+
+/**
+ * Injects failures while GADGET runs, so that the convergence time and
+ * accuracy of push-sum under churn can be measured. At every execution each
+ * node that is up dies for good with probability {@value #PAR_KILL}, or goes
+ * down for a while with probability {@value #PAR_DOWN}; each node that is
+ * down comes back with probability {@value #PAR_UP}. Dead and down nodes are
+ * skipped by the simulator, their links stay in the overlay.
+ * <p>
+ * Only the pushflow variant of {@link GadgetProtocol4} keeps the average
+ * right when nodes die, see {@link PushFlow}.
+ */
+public class ChurnControl implements Control {
+
+    // /////////////////////////////////////////////////////////////////////
+    // Constants
+    // /////////////////////////////////////////////////////////////////////
+
+    /**
+     * Probability for a node that is up to die at each execution, defaults
+     * to 0.
+     * 
+     * @config
+     */
+    private static final String PAR_KILL = "kill";
+
+    /**
+     * Probability for a node that is up to go down at each execution,
+     * defaults to 0.
+     * 
+     * @config
+     */
+    private static final String PAR_DOWN = "down";
+
+    /**
+     * Probability for a node that is down to come back at each execution,
+     * defaults to 0.
+     * 
+     * @config
+     */
+    private static final String PAR_UP = "up";
+
+    /**
+     * Number of nodes that are always kept up, defaults to 1.
+     * 
+     * @config
+     */
+    private static final String PAR_MIN = "min";
+
+    // /////////////////////////////////////////////////////////////////////
+    // Fields
+    // /////////////////////////////////////////////////////////////////////
+
+    /** The name of this control in the configuration */
+    private final String name;
+
+    private final double kill;
+
+    private final double down;
+
+    private final double up;
+
+    private final int min;
+
+    // /////////////////////////////////////////////////////////////////////
+    // Constructor
+    // /////////////////////////////////////////////////////////////////////
+
+    /**
+     * Creates a new control reading configuration parameters.
+     */
+    public ChurnControl(String name) {
+        this.name = name;
+        kill = Configuration.getDouble(name + "." + PAR_KILL, 0.0);
+        down = Configuration.getDouble(name + "." + PAR_DOWN, 0.0);
+        up = Configuration.getDouble(name + "." + PAR_UP, 0.0);
+        min = Configuration.getInt(name + "." + PAR_MIN, 1);
+    }
+
+    // /////////////////////////////////////////////////////////////////////
+    // Methods
+    // /////////////////////////////////////////////////////////////////////
+
+    /**
+     * Changes the fail state of the nodes and prints what changed.
+     * 
+     * @return always false, this control never stops the simulation.
+     */
+    public boolean execute() {
+        if (GadgetProtocol4.end) return false;
+        int alive = 0;
+        for (int i = 0; i < Network.size(); i++) {
+            if (Network.get(i).isUp()) alive++;
+        }
+        int killed = 0, downed = 0, recovered = 0;
+        for (int i = 0; i < Network.size(); i++) {
+            Node n = Network.get(i);
+            if (n.getFailState() == Fallible.DOWN) {
+                if (CommonState.r.nextDouble() < up) {
+                    n.setFailState(Fallible.OK);
+                    alive++;
+                    recovered++;
+                }
+            } else if (n.isUp() && alive > min) {
+                double x = CommonState.r.nextDouble();
+                if (x < kill) {
+                    n.setFailState(Fallible.DEAD);
+                    alive--;
+                    killed++;
+                } else if (x < kill + down) {
+                    n.setFailState(Fallible.DOWN);
+                    alive--;
+                    downed++;
+                }
+            }
+        }
+        if (killed + downed + recovered > 0)
+            System.out.println(name + ": " + CommonState.getTime() + " " + killed
+                    + " killed, " + downed + " down, " + recovered + " back, "
+                    + alive + " up");
+        return false;
+    }
+}
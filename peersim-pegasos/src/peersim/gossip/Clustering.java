@@ -0,0 +1,178 @@
+/*
+ * Peersim-Gadget : A Gadget protocol implementation in peersim based on the paper
+ * Chase Henzel, Haimonti Dutta
+ * GADGET SVM: A Gossip-bAseD sub-GradiEnT SVM Solver
+ *
+ * Copyright (C) 2012
+ * Deepak Nayak
+ * Columbia University, Computer Science MS'13
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package peersim.gossip;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Class Clustering
+ * Partition of the overlay into connected clusters of about the same size,
+ * used by the hierarchical push-sum of {@link GadgetProtocol4}. Nodes are
+ * visited by ID; every node not yet in a cluster becomes the head of a new one
+ * and grows it by breadth first search over the undirected overlay until it
+ * holds the target number of nodes. Every cluster is connected through its
+ * own links, and two heads are neighbours if a link joins their clusters.
+ */
+public class Clustering {
+
+	/** cluster index of every node, by node ID */
+	public final int[] cluster;
+
+	/** node ID of the head of every cluster */
+	public final int[] head;
+
+	/** number of nodes in every cluster */
+	public final int[] size;
+
+	/** neighbours of every node inside its cluster, by node ID */
+	public final int[][] peers;
+
+	/** heads of the clusters adjacent to every cluster */
+	public final int[][] headPeers;
+
+	/**
+	 * @param nbrs the overlay, see {@link Overlay#neighbours}
+	 * @param target number of nodes per cluster
+	 */
+	public Clustering(int[][] nbrs, int target) {
+		int n = nbrs.length;
+		int[][] undir = undirected(nbrs);
+		cluster = new int[n];
+		Arrays.fill(cluster, -1);
+		int[] heads = new int[n];
+		int[] sizes = new int[n];
+		int clusters = 0;
+		ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+		for(int h=0;h<n;h++) {
+			if(cluster[h] >= 0) continue;
+			int c = clusters++;
+			heads[c] = h;
+			cluster[h] = c;
+			sizes[c] = 1;
+			queue.clear();
+			queue.add(h);
+			while(!queue.isEmpty() && sizes[c] < target) {
+				int u = queue.poll();
+				for(int v : undir[u]) {
+					if(cluster[v] >= 0 || sizes[c] >= target) continue;
+					cluster[v] = c;
+					sizes[c]++;
+					queue.add(v);
+				}
+			}
+		}
+		head = Arrays.copyOf(heads, clusters);
+		size = Arrays.copyOf(sizes, clusters);
+
+		peers = new int[n][];
+		@SuppressWarnings("unchecked")
+		Set<Integer>[] adjacent = (Set<Integer>[]) new Set<?>[clusters];
+		for(int c=0;c<clusters;c++) adjacent[c] = new LinkedHashSet<Integer>();
+		for(int i=0;i<n;i++) {
+			int[] tmp = new int[undir[i].length];
+			int d = 0;
+			for(int j : undir[i]) {
+				if(cluster[j] == cluster[i]) tmp[d++] = j;
+				else adjacent[cluster[i]].add(head[cluster[j]]);
+			}
+			peers[i] = Arrays.copyOf(tmp, d);
+		}
+		headPeers = new int[clusters][];
+		for(int c=0;c<clusters;c++) {
+			headPeers[c] = new int[adjacent[c].size()];
+			int d = 0;
+			for(int h : adjacent[c]) headPeers[c][d++] = h;
+		}
+	}
+
+	private Clustering(int[] cluster, int[] head, int[] size, int[][] peers, int[][] headPeers) {
+		this.cluster = cluster;
+		this.head = head;
+		this.size = size;
+		this.peers = peers;
+		this.headPeers = headPeers;
+	}
+
+	/** Writes the clusters, see {@link CheckpointControl} */
+	void save(DataOutput out) throws IOException {
+		CheckpointControl.writeInts(out, cluster);
+		CheckpointControl.writeInts(out, head);
+		CheckpointControl.writeInts(out, size);
+		CheckpointControl.writeTable(out, peers);
+		CheckpointControl.writeTable(out, headPeers);
+	}
+
+	/** Reads what {@link #save} wrote */
+	static Clustering load(DataInput in) throws IOException {
+		return new Clustering(CheckpointControl.readInts(in), CheckpointControl.readInts(in),
+				CheckpointControl.readInts(in), CheckpointControl.readTable(in),
+				CheckpointControl.readTable(in));
+	}
+
+	/** Number of clusters */
+	public int clusters() { return head.length; }
+
+	/** true if the node with the given ID heads its cluster */
+	public boolean isHead(int id) { return head[cluster[id]] == id; }
+
+	/** The overlay with every link made bidirectional */
+	private static int[][] undirected(int[][] nbrs) {
+		int n = nbrs.length;
+		int[] deg = new int[n];
+		for(int i=0;i<n;i++) {
+			for(int j : nbrs[i]) {
+				if(j == i) continue;
+				deg[i]++;
+				deg[j]++;
+			}
+		}
+		int[][] undir = new int[n][];
+		for(int i=0;i<n;i++) undir[i] = new int[deg[i]];
+		Arrays.fill(deg, 0);
+		for(int i=0;i<n;i++) {
+			for(int j : nbrs[i]) {
+				if(j == i) continue;
+				undir[i][deg[i]++] = j;
+				undir[j][deg[j]++] = i;
+			}
+		}
+		// links present in both directions show up twice
+		for(int i=0;i<n;i++) {
+			int[] row = undir[i];
+			Arrays.sort(row);
+			int d = 0;
+			for(int k=0;k<row.length;k++) {
+				if(k == 0 || row[k] != row[k-1]) row[d++] = row[k];
+			}
+			undir[i] = Arrays.copyOf(row, d);
+		}
+		return undir;
+	}
+}
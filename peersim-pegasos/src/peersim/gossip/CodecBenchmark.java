@@ -0,0 +1,167 @@
+/*
+ * Peersim-Gadget : A Gadget protocol implementation in peersim based on the paper
+ * Chase Henzel, Haimonti Dutta
+ * GADGET SVM: A Gossip-bAseD sub-GradiEnT SVM Solver
+ *
+ * Copyright (C) 2012
+ * Deepak Nayak
+ * Columbia University, Computer Science MS'13
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package peersim.gossip;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import jnipegasos.JNIPegasosInterface;
+
+/**
+ * Class CodecBenchmark
+ * Compares {@link SparseVectorCodec} with the svmlight text of the model
+ * files: bytes per entry, encoding and decoding time, and the largest error
+ * of the lossy precisions, on random vectors shaped like GADGET models.
+ * <pre>
+ * java peersim.gossip.CodecBenchmark [vectors [features [density]]]
+ * </pre>
+ * defaults 20 vectors of 100000 features, 30% non-zero. The text is also
+ * read back through the JNI reader of the model files when the native
+ * library can be loaded (-Djava.library.path=lib).
+ */
+public class CodecBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int vectors = (args.length > 0) ? Integer.parseInt(args[0]) : 20;
+		int features = (args.length > 1) ? Integer.parseInt(args[1]) : 100000;
+		double density = (args.length > 2) ? Double.parseDouble(args[2]) : 0.3;
+		Random r = new Random(1);
+		TreeMap<Integer, Double>[] w = newVectors(vectors);
+		long entries = 0;
+		for (int i = 0; i < vectors; i++) {
+			w[i] = new TreeMap<Integer, Double>();
+			for (int f = 1; f <= features; f++)
+				if(r.nextDouble() < density) w[i].put(f, 100 * r.nextGaussian());
+			entries += w[i].size();
+		}
+		System.out.println(vectors + " vectors, " + entries + " entries");
+
+		// text, as PegasosNode.writeWeights writes it
+		long start = System.nanoTime();
+		String[] text = new String[vectors];
+		long textBytes = 0;
+		for (int i = 0; i < vectors; i++) {
+			StringBuilder sb = new StringBuilder();
+			for (Map.Entry<Integer, Double> entry : w[i].entrySet())
+				sb.append(entry.getKey()).append(':').append(entry.getValue()).append(' ');
+			text[i] = sb.toString();
+			textBytes += text[i].length();
+		}
+		long encode = System.nanoTime() - start;
+		start = System.nanoTime();
+		for (int i = 0; i < vectors; i++) parseText(text[i]);
+		long decode = System.nanoTime() - start;
+		print("text", textBytes, entries, encode, decode, 0.0);
+		jniRead(text, textBytes, entries);
+
+		String[] names = { "raw", "float", "quant16" };
+		for (String name : names) {
+			int precision = SparseVectorCodec.precision(name);
+			start = System.nanoTime();
+			byte[][] bytes = new byte[vectors][];
+			long total = 0;
+			for (int i = 0; i < vectors; i++) {
+				bytes[i] = SparseVectorCodec.encode(w[i], precision);
+				total += bytes[i].length;
+			}
+			encode = System.nanoTime() - start;
+			start = System.nanoTime();
+			double error = 0.0;
+			TreeMap<Integer, Double>[] back = newVectors(vectors);
+			for (int i = 0; i < vectors; i++)
+				back[i] = SparseVectorCodec.decode(ByteBuffer.wrap(bytes[i]));
+			decode = System.nanoTime() - start;
+			for (int i = 0; i < vectors; i++) {
+				for (Map.Entry<Integer, Double> entry : w[i].entrySet())
+					error = Math.max(error, Math.abs(entry.getValue() - back[i].get(entry.getKey())));
+			}
+			print(name, total, entries, encode, decode, error);
+			// in place, as a scorer reading a mapped file would
+			start = System.nanoTime();
+			double sum = 0.0;
+			for (int i = 0; i < vectors; i++) {
+				SparseVectorCodec.Reader reader = new SparseVectorCodec.Reader(ByteBuffer.wrap(bytes[i]));
+				while(reader.next()) sum += reader.value();
+			}
+			System.out.println(String.format("  %-8s in place read %8.1f ms (checksum %.3g)",
+					name, (System.nanoTime() - start) / 1e6, sum));
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static TreeMap<Integer, Double>[] newVectors(int n) {
+		return (TreeMap<Integer, Double>[]) new TreeMap<?, ?>[n];
+	}
+
+	private static TreeMap<Integer, Double> parseText(String line) {
+		TreeMap<Integer, Double> w = new TreeMap<Integer, Double>();
+		for (String token : line.trim().split("\\s+")) {
+			int colon = token.indexOf(':');
+			w.put(Integer.parseInt(token.substring(0, colon)),
+					Double.parseDouble(token.substring(colon + 1)));
+		}
+		return w;
+	}
+
+	/** Reads the text through JNIPegasosInterface.getWeightsfromFile */
+	private static void jniRead(String[] text, long textBytes, long entries) throws IOException {
+		JNIPegasosInterface reader;
+		try {
+			reader = new JNIPegasosInterface();
+		}
+		catch (Throwable t) {
+			System.out.println("  (no native library, JNI reader skipped)");
+			return;
+		}
+		File[] files = new File[text.length];
+		for (int i = 0; i < text.length; i++) {
+			files[i] = File.createTempFile("codec", ".dat");
+			files[i].deleteOnExit();
+			FileWriter out = new FileWriter(files[i]);
+			out.write(text[i]);
+			out.close();
+		}
+		long start = System.nanoTime();
+		try {
+			for (File f : files) reader.getWeightsfromFile(f.getPath());
+		}
+		catch (java.text.ParseException e) {
+			e.printStackTrace();
+			return;
+		}
+		print("text/jni", textBytes, entries, 0, System.nanoTime() - start, 0.0);
+	}
+
+	private static void print(String name, long bytes, long entries, long encode,
+			long decode, double error) {
+		System.out.println(String.format("%-10s %6.2f bytes/entry, encode %8.1f ms, "
+				+ "decode %8.1f ms, max error %.3g", name, (double)bytes / entries,
+				encode / 1e6, decode / 1e6, error));
+	}
+}
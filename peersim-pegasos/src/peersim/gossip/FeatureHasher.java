@@ -0,0 +1,136 @@
+/*
+ * Peersim-Gadget : A Gadget protocol implementation in peersim based on the paper
+ * Chase Henzel, Haimonti Dutta
+ * GADGET SVM: A Gossip-bAseD sub-GradiEnT SVM Solver
+ *
+ * Copyright (C) 2012
+ * Deepak Nayak
+ * Columbia University, Computer Science MS'13
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package peersim.gossip;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import jnisvmlight.LabeledFeatureVector;
+
+/**
+ * Class FeatureHasher
+ * The hashing trick with signed hashing: feature f goes to index
+ * 1 + (h(f) mod 2^bits) with value sign(h(f)) * value, features falling on
+ * the same index being summed. The sign makes collisions cancel out on
+ * average instead of adding up. With bits b every weight vector, and so
+ * every push-sum message, has at most 2^b entries whatever the dimension of
+ * the data. The same bits must be used for training (network.node.hashbits)
+ * and testing (TestClassifier --hashBits).
+ */
+public final class FeatureHasher {
+
+	private final int bits;
+
+	private final int mask;
+
+	/** @param bits size of the hashed space, 2^bits indices, 1 to 30 */
+	public FeatureHasher(int bits) {
+		if(bits < 1 || bits > 30)
+			throw new IllegalArgumentException("hash bits must be in [1, 30]: " + bits);
+		this.bits = bits;
+		this.mask = (1 << bits) - 1;
+	}
+
+	public int getBits() {
+		return bits;
+	}
+
+	/** Hashed index of feature f, in [1, 2^bits] as svmlight indices start at 1 */
+	public int index(int f) {
+		return (mix(f) & mask) + 1;
+	}
+
+	/** Sign of feature f, from a bit the index does not use */
+	public double sign(int f) {
+		return (mix(f) < 0) ? -1.0 : 1.0;
+	}
+
+	/**
+	 * Hashes one line of svmlight data, label f:v ... [# comment]. Tokens
+	 * that are not feature:value pairs with an integer feature (qid:, the
+	 * comment) are kept as they are.
+	 */
+	public String hashLine(String line) {
+		String comment = "";
+		int hash = line.indexOf('#');
+		if(hash >= 0) {
+			comment = " " + line.substring(hash);
+			line = line.substring(0, hash);
+		}
+		String[] tokens = line.trim().split("\\s+");
+		if(tokens.length == 0 || tokens[0].length() == 0) return line + comment;
+		StringBuilder sb = new StringBuilder(tokens[0]);
+		TreeMap<Integer, Double> features = new TreeMap<Integer, Double>();
+		for (int i = 1; i < tokens.length; i++) {
+			int colon = tokens[i].indexOf(':');
+			if(colon > 0 && !tokens[i].startsWith("qid")) {
+				int f = Integer.parseInt(tokens[i].substring(0, colon));
+				double v = Double.parseDouble(tokens[i].substring(colon + 1));
+				add(features, f, v);
+			}
+			else {
+				sb.append(' ').append(tokens[i]);
+			}
+		}
+		for (Map.Entry<Integer, Double> entry : features.entrySet()) {
+			if(entry.getValue() != 0.0)
+				sb.append(' ').append(entry.getKey()).append(':').append(entry.getValue());
+		}
+		return sb.append(comment).toString();
+	}
+
+	/** Hashes a loaded point */
+	public LabeledFeatureVector hash(LabeledFeatureVector x) {
+		TreeMap<Integer, Double> features = new TreeMap<Integer, Double>();
+		for (int i = 0; i < x.size(); i++)
+			add(features, x.getDimAt(i), x.getValueAt(i));
+		// as in hashLine, features that cancelled out are dropped
+		while(features.values().remove(0.0));
+		int[] dims = new int[features.size()];
+		double[] vals = new double[features.size()];
+		int i = 0;
+		for (Map.Entry<Integer, Double> entry : features.entrySet()) {
+			dims[i] = entry.getKey();
+			vals[i] = entry.getValue();
+			i++;
+		}
+		return new LabeledFeatureVector(x.getLabel(), dims, vals);
+	}
+
+	private void add(TreeMap<Integer, Double> features, int f, double v) {
+		int index = index(f);
+		Double old = features.get(index);
+		features.put(index, ((old == null) ? 0.0 : old) + sign(f) * v);
+	}
+
+	/** murmur3 32 bit finalizer */
+	private static int mix(int h) {
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+}
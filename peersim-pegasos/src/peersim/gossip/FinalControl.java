@@ -23,6 +23,9 @@
 
 package peersim.gossip;
 
+import java.io.File;
+import java.io.IOException;
+
 import peersim.core.*;
 import peersim.config.*;
 /**
@@ -44,6 +47,32 @@ public class FinalControl  implements Control {
  */
 public static final String PAR_PROTID = "protocol";
 
+/**
+ * Format of the model export: text (default), the global_&lt;id&gt;.dat
+ * files, binary, one indexed file (see {@link ModelExporter}), or both
+ * @config
+ */
+public static final String PAR_FORMAT = "format";
+
+/**
+ * Name of the binary export, defaults to global.bin in the resourcepath
+ * @config
+ */
+public static final String PAR_FILE = "file";
+
+/**
+ * Precision of the weights in the binary export: raw (default), float or
+ * quant16, see {@link SparseVectorCodec}
+ * @config
+ */
+public static final String PAR_PRECISION = "precision";
+
+/**
+ * Number of threads writing the models, defaults to the number of processors
+ * @config
+ */
+public static final String PAR_THREADS = "threads";
+
 
 //--------------------------------------------------------------------------
 // Fields
@@ -55,6 +84,14 @@ private final String name;
 /** Protocol identifier */
 private final int pid;
 
+private final String format;
+
+private final String file;
+
+private final int threads;
+
+private final int precision;
+
 // iterator counter
 private static int i = 0;
 
@@ -69,6 +106,15 @@ private static int i = 0;
 public FinalControl(String name) {
 	this.name = name;
 	this.pid = Configuration.getPid(name + "." + PAR_PROTID);
+	this.format = Configuration.getString(name + "." + PAR_FORMAT, "text");
+	if(!format.equals("text") && !format.equals("binary") && !format.equals("both"))
+		throw new IllegalParameterException(name + "." + PAR_FORMAT,
+				"unknown format " + format + ", expected text, binary or both");
+	this.file = Configuration.getString(name + "." + PAR_FILE, null);
+	this.threads = Configuration.getInt(name + "." + PAR_THREADS,
+			Runtime.getRuntime().availableProcessors());
+	this.precision = SparseVectorCodec.precision(
+			Configuration.getString(name + "." + PAR_PRECISION, "raw"));
   }
 
 
@@ -80,11 +126,36 @@ public FinalControl(String name) {
 // Do nothing, just for test
 public boolean execute() {
 	final int len = Network.size();
+	PegasosNode[] nodes = new PegasosNode[len];
 	for (int i = 0; i <  len; i++) {
-		PegasosNode node = (PegasosNode) Network.get(i);
-		node.writeGlobalWeights();
+		nodes[i] = (PegasosNode) Network.get(i);
+		System.out.println("[finish]: global weight norm at node["
+				+ nodes[i].getID() + "]: "+ nodes[i].getWtvector().getL2Norm());
+	}
+	try {
+		if(format.equals("text") || format.equals("both")) {
+			long start = System.currentTimeMillis();
+			long bytes = ModelExporter.writeText(nodes, threads);
+			System.out.println("[export] text: " + len + " models, " + bytes
+					+ " bytes in " + (System.currentTimeMillis() - start) + " ms");
+		}
+		if(len > 0 && (format.equals("binary") || format.equals("both"))) {
+			long start = System.currentTimeMillis();
+			File out = new File((file != null) ? file
+					: nodes[0].getResourcePath() + "/global.bin");
+			long bytes = ModelExporter.writeBinary(nodes, out, threads, precision);
+			System.out.println("[export] binary: " + len + " models, " + bytes
+					+ " bytes to " + out + " in " + (System.currentTimeMillis() - start) + " ms");
+		}
+	}
+	catch (IOException ioe) {
+		ioe.printStackTrace();
 	}
 	System.out.println("Running final control");
+	if(ShardStore.isOpen())
+		ShardStore.report();
+	if(PegasosNode.getArena() != null)
+		System.out.println("[sparse arena] " + PegasosNode.getArena().report());
 	GadgetProtocol.writeIntoFile(String.valueOf(System.currentTimeMillis())+"\n");
 
 	return false;
@@ -0,0 +1,95 @@
+/*
+ * Peersim-Gadget : A Gadget protocol implementation in peersim based on the paper
+ * Chase Henzel, Haimonti Dutta
+ * GADGET SVM: A Gossip-bAseD sub-GradiEnT SVM Solver
+ *
+ * Copyright (C) 2012
+ * Deepak Nayak
+ * Columbia University, Computer Science MS'13
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package peersim.gossip;
+
+import com.jamal.JamalException;
+import com.jamal.MatlabCaller;
+import com.jamal.client.MatlabClient;
+
+/**
+ * Class FmmcBMatrix
+ * The fastest mixing Markov chain weights, obtained by solving the SDP in
+ * fmmc.m through a Matlab server (see INSTALL_FMMC.txt). fmmc.m only returns
+ * the edge weights, the self weights are filled here so that B = I - L.
+ * When the solve fails (no Matlab server) the Metropolis weights are
+ * returned instead, with a warning, never a matrix that does not mix.
+ */
+public class FmmcBMatrix extends BMatrixBuilder {
+
+	/** Set when the solve failed and the Metropolis weights were used */
+	private boolean fallback = false;
+
+	public String getName() { return fallback ? FMMC + "(failed, " + METROPOLIS + ")" : FMMC; }
+
+	/** True if the last build fell back to the Metropolis weights */
+	public boolean isFallback() { return fallback; }
+
+	public boolean isCacheable() { return !fallback; }
+
+	public double[][] build(int lid) {
+		int networkSize = peersim.core.Network.size();
+		double[][] B;
+		int[][] adjM = Overlay.adjacency(lid);
+		fallback = false;
+		try {
+			MatlabClient matlabClient = new MatlabClient(
+					MatlabCaller.HOST_ADDRESS,
+					"/home/raghuram/MATLAB/R2012a/bin/matlab.exe",40);
+			Object[] inArgs = new Object[1];
+			inArgs[0] = adjM;
+			Object[] outputArgs = matlabClient.executeMatlabFunction("fmmc",
+					inArgs, 2);
+			double[] prob = (double[])outputArgs[0];
+			B = toMatrix(prob,networkSize);
+			matlabClient.shutDownServer();
+		} catch (JamalException e) {
+			return fallBack(lid, e);
+		} catch (Exception e) {
+			return fallBack(lid, e);
+		}
+		fillDiagonal(B);
+		return B;
+	}
+
+	/**
+	 * Without the solve B would be the identity and pushsum2 would not mix at
+	 * all, so the Metropolis weights are used instead, with a warning.
+	 */
+	private double[][] fallBack(int lid, Exception e) {
+		System.err.println("[bmatrix] warning: the FMMC solve failed (" + e
+				+ "), falling back to the Metropolis weights");
+		fallback = true;
+		return new MetropolisBMatrix().build(lid);
+	}
+
+	private static double[][] toMatrix(double[] array, int n) {
+		double[][] mat = new double[n][n];
+		for(int i=0;i<n;i++) {
+			for(int j=0;j<n;j++) {
+				mat[i][j] = array[i*n+j];
+			}
+		}
+		return mat;
+	}
+}
@@ -34,6 +34,7 @@ import java.util.Map;
 import java.util.TreeMap;
 
 import jnipegasos.PrimalSVMWeights;
+import jnisvmlight.LabeledFeatureVector;
 
 import peersim.config.Configuration;
 import peersim.config.FastConfig;
@@ -176,7 +177,8 @@ public class GadgetProtocol implements CDProtocol {
 		
 		System.out.println("current node ID: [" + pn.getID() + "]");
 
-		int N = pn.traindataset.length;	// #data points
+		LabeledFeatureVector[] data = pn.getShard();
+		int N = data.length;	// #data points
 		double y;	// label
 		// reset the weights at start as in the first line of GADGET
 	        //pn.wtvector.resetWeights();
@@ -193,16 +195,16 @@ public class GadgetProtocol implements CDProtocol {
 			// y*<w.x> < 1
 			pn.misclassified = 0;	// reset the misclassified count in each iter
 			for (int n = 0; n < N; n++) { // data point loop
-				y = pn.traindataset[n].getLabel();
-				int xsize = pn.traindataset[n].size();
+				y = data[n].getLabel();
+				int xsize = data[n].size();
 				double dotprod = 0.0;
 
 				// calculate <w,x> using two iterator which moves over x[i] and w
 				for (int xiter = 0; xiter < xsize; xiter++) { // dot product loop
-					int xdim = pn.traindataset[n].getDimAt(xiter);
-					double xval = pn.traindataset[n].getValueAt(xiter);
-					if(pn.wtvector.getWeights().containsKey(xdim)) {// wtvector has this dim
-						double wval = pn.wtvector.getWeights().get(xdim);
+					int xdim = data[n].getDimAt(xiter);
+					double xval = data[n].getValueAt(xiter);
+					if(pn.getWtvector().getWeights().containsKey(xdim)) {// wtvector has this dim
+						double wval = pn.getWtvector().getWeights().get(xdim);
 						dotprod += xval * wval;
 					}
 
@@ -212,8 +214,8 @@ public class GadgetProtocol implements CDProtocol {
 						//pn.misclassified++;
 					// Li calculated.
 					for(int xiter = 0; xiter < xsize; xiter++) {// xsize loop
-						int xkey = pn.traindataset[n].getDimAt(xiter);
-						double xval = pn.traindataset[n].getValueAt(xiter);
+						int xkey = data[n].getDimAt(xiter);
+						double xval = data[n].getValueAt(xiter);
 						if(L.containsKey(xkey)) {
 							L.put(xkey, L.get(xkey) + y * xval);
 						}
@@ -229,26 +231,26 @@ public class GadgetProtocol implements CDProtocol {
 			}
 			double alpha = 1.0 / (lambda * (t+1)); // our loop starts from 0
 			//calculate w_t1/2, what is ni??
-			Iterator<Integer> w_it = pn.wtvector.getWeights().keySet().iterator();
+			Iterator<Integer> w_it = pn.getWtvector().getWeights().keySet().iterator();
 			Iterator<Integer> l_it = L.keySet().iterator();
 			// Lots of confusion, so do it in two step
 			// inefficient but clean
 			while (w_it.hasNext()) {
 				Integer index = w_it.next();
 				// not sure if first term should be multiplied by N
-				double newval = (1 - lambda * alpha) * N * pn.wtvector.getWeights().get(index);
+				double newval = (1 - lambda * alpha) * N * pn.getWtvector().getWeights().get(index);
 				//double newval = (1 - lambda * alpha) * pn.wtvector.getWeights().get(index);
-				pn.wtvector.addFeature(index, newval);		
+				pn.getWtvector().addFeature(index, newval);		
 			}
 			while (l_it.hasNext()) {
 				Integer index = l_it.next();
 				double lossterm = L.get(index);
-				if(pn.wtvector.getWeights().containsKey(index)) {
-					pn.wtvector.addFeature(index, alpha * lossterm + 
-							pn.wtvector.getWeights().get(index));
+				if(pn.getWtvector().getWeights().containsKey(index)) {
+					pn.getWtvector().addFeature(index, alpha * lossterm + 
+							pn.getWtvector().getWeights().get(index));
 				}
 				else {
-					pn.wtvector.addFeature(index, alpha * lossterm);
+					pn.getWtvector().addFeature(index, alpha * lossterm);
 				}
 			} // ~w_t1/2 calculated, now do push sum
 			PegasosNode peer = (PegasosNode)selectRandomNeighbor(node);
@@ -257,29 +259,29 @@ public class GadgetProtocol implements CDProtocol {
 			}
 			// now add pn.wtvector and peer.wtvector
 			//Iterator<Integer> n_it = pn.wtvector.getWeights().keySet().iterator();
-			Iterator<Integer> p_it = peer.wtvector.getWeights().keySet().iterator();
+			Iterator<Integer> p_it = peer.getWtvector().getWeights().keySet().iterator();
 			while (p_it.hasNext()) {
 				// w and l are sorted
 				Integer index = p_it.next();
-				if(pn.wtvector.getWeights().containsKey(index)) {
-					pn.wtvector.addFeature(index,  
-							peer.wtvector.getWeights().get(index) +
-							pn.wtvector.getWeights().get(index));
+				if(pn.getWtvector().getWeights().containsKey(index)) {
+					pn.getWtvector().addFeature(index,  
+							peer.getWtvector().getWeights().get(index) +
+							pn.getWtvector().getWeights().get(index));
 				}
 				else {
-					pn.wtvector.addFeature(index, 
-							peer.wtvector.getWeights().get(index));
+					pn.getWtvector().addFeature(index, 
+							peer.getWtvector().getWeights().get(index));
 				}
 			} // push sum done
-			double scale = Math.min(1.0, 1.0 / (Math.sqrt(lambda) * pn.wtvector.getL2Norm()));
-			for (Map.Entry<Integer, Double> entry : pn.wtvector.getWeights().entrySet()) {
-				pn.wtvector.addFeature(entry.getKey(), (1.0 + scale) * entry.getValue());
+			double scale = Math.min(1.0, 1.0 / (Math.sqrt(lambda) * pn.getWtvector().getL2Norm()));
+			for (Map.Entry<Integer, Double> entry : pn.getWtvector().getWeights().entrySet()) {
+				pn.getWtvector().addFeature(entry.getKey(), (1.0 + scale) * entry.getValue());
 				// also set the peers weight same
-				peer.wtvector.addFeature(entry.getKey(), (1.0 + scale) * entry.getValue());			
+				peer.getWtvector().addFeature(entry.getKey(), (1.0 + scale) * entry.getValue());			
 			}
 			// normalize both weights
-			pn.wtvector.normalizeWeights();
-			peer.wtvector.normalizeWeights();
+			pn.getWtvector().normalizeWeights();
+			peer.getWtvector().normalizeWeights();
 			//System.out.println("[iteration: " + t + "] local weight norm at node [" +
 			// 	pn.getID() + "] : " + pn.wtvector.getL2Norm() );				
 			//System.out.println("[iteration: " + t + "] local weight norm at node [" +
@@ -23,16 +23,15 @@
 
 package peersim.gossip;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
-import com.jamal.JamalException;
-import com.jamal.MatlabCaller;
-import com.jamal.client.MatlabClient;
-
 import jnipegasos.PrimalSVMWeights;
 
 import peersim.config.Configuration;
@@ -60,6 +59,68 @@ public class GadgetProtocol4 implements CDProtocol {
 	 * @config
 	 */
 	private static final String PAR_ITERATION = "iter";
+	/**
+	 * New config option to select how pushsum2 mixes the values of a round,
+	 * none (default) applies optimalB once per round, chebyshev uses the
+	 * Chebyshev semi-iterative recurrence driven by the SLEM of optimalB
+	 * @config
+	 */
+	private static final String PAR_ACCEL = "accel";
+	/**
+	 * New config option to select how optimalB is built for pushsum2:
+	 * fmmc (default), metropolis, maxdegree, bestconstant or auto,
+	 * see {@link BMatrixBuilder}
+	 * @config
+	 */
+	private static final String PAR_BMATRIX = "bmatrix";
+	/**
+	 * New config option giving the spectral gap the auto B matrix builder has
+	 * to reach, defaults to 0
+	 * @config
+	 */
+	private static final String PAR_GAP = "gap";
+	/**
+	 * New config option giving a directory where built B matrices are cached,
+	 * keyed by the overlay they were built for. No caching if not given
+	 * @config
+	 */
+	private static final String PAR_BCACHE = "bcache";
+	/**
+	 * New config option giving the number of matrices kept in the cache,
+	 * defaults to 64
+	 * @config
+	 */
+	private static final String PAR_BCACHE_SIZE = "bcache.size";
+	/**
+	 * New config flag: when present, optimalB follows the changes of the
+	 * overlay through local updates, see {@link BMatrixMaintainer}
+	 * @config
+	 */
+	private static final String PAR_DYNAMIC = "dynamic";
+	/**
+	 * New config option giving the number of nodes per cluster of the
+	 * hierarchical push-sum, defaults to 32
+	 * @config
+	 */
+	private static final String PAR_CLUSTER = "cluster";
+	/**
+	 * New config option giving the number of intra-cluster rounds of the
+	 * hierarchical push-sum, defaults to 20
+	 * @config
+	 */
+	private static final String PAR_INTRA = "intra";
+	/**
+	 * New config option giving the number of rounds between cluster heads of
+	 * the hierarchical push-sum, defaults to 20
+	 * @config
+	 */
+	private static final String PAR_INTER = "inter";
+	/**
+	 * New config option giving the probability that a push-flow message is
+	 * lost, defaults to 0
+	 * @config
+	 */
+	private static final String PAR_LOSS = "loss";
 	
 	public static boolean flag = false;
 	
@@ -78,11 +139,33 @@ public class GadgetProtocol4 implements CDProtocol {
 	
 	public static double[][] optimalB;
 	
+	/** Second largest eigenvalue modulus of optimalB, used by chebyshev */
+	public static double slem = -1;
+	
+	/** Keeps optimalB in line with the overlay, null if the overlay is static */
+	public static BMatrixMaintainer maintainer = null;
+	
+	/** Cycle of the last round optimalB was brought in line with the overlay */
+	private static long maintainedAt = -1;
+	
+	/** Number of times the maintainer changed optimalB */
+	private static int bVersion = 0;
+	
+	/** The nodes by ID, as of the last maintained round */
+	private static Node[] byID;
+	
+	/** Clusters of the hierarchical push-sum, built at its first round */
+	public static Clustering clustering = null;
+	
 	public static boolean end = false;
 	
 	public static boolean pushsumobserverflag = false;
 	
+	/** Running sum of the iterates, read it with {@link #primal()} */
 	private PrimalSVMWeights primalSVMWeights;
+
+	/** Slot of the running sum when the weights are in the arena */
+	private SparseArena.Slot primalSlot;
 	
 	private PrimalSVMWeights oldWeightVector;
 	
@@ -91,6 +174,53 @@ public class GadgetProtocol4 implements CDProtocol {
 	private boolean pushsum2_execute = true;
 	
 	private String protocol;
+	
+	/** Local step performed between two consensus phases */
+	private LocalSolver solver;
+	
+	private String accel;
+	
+	private String bmatrix;
+	
+	private double gap;
+	
+	private String bcache;
+	
+	private int bcacheSize;
+	
+	private boolean dynamic;
+	
+	private int clusterSize;
+	
+	private int intraRounds;
+	
+	private int interRounds;
+	
+	/** Hierarchical push-sum state: round count, and sum and weight of a head */
+	private int hierRound;
+	
+	private boolean headInit;
+	
+	private PrimalSVMWeights headSum;
+	
+	private double headWeight;
+	
+	/** Chebyshev registers: the value of the previous round, round count and omega */
+	private PrimalSVMWeights prevWeightVector;
+	
+	private double prevWeight;
+	
+	private int accelRound;
+	
+	private double omega;
+	
+	/** bVersion the Chebyshev registers were built with */
+	private int accelVersion = 0;
+	
+	/** Push-flow state, see {@link PushFlow} */
+	private PushFlow flow;
+	
+	private double loss;
 
 	/**
 	 * Default constructor for configurable objects.
@@ -103,7 +233,19 @@ public class GadgetProtocol4 implements CDProtocol {
 		primalSVMWeights = new PrimalSVMWeights(new TreeMap<Integer, Double>());
 		oldWeightVector = new PrimalSVMWeights(new TreeMap<Integer, Double>());
 		protocol = Configuration.getString(prefix + "." + "prot", "pushsum1");
-		
+		solver = LocalSolver.create(prefix);
+		accel = Configuration.getString(prefix + "." + PAR_ACCEL, "none");
+		bmatrix = Configuration.getString(prefix + "." + PAR_BMATRIX, BMatrixBuilder.FMMC);
+		gap = Configuration.getDouble(prefix + "." + PAR_GAP, 0.0);
+		bcache = Configuration.getString(prefix + "." + PAR_BCACHE, null);
+		bcacheSize = Configuration.getInt(prefix + "." + PAR_BCACHE_SIZE, 64);
+		dynamic = Configuration.contains(prefix + "." + PAR_DYNAMIC);
+		clusterSize = Configuration.getInt(prefix + "." + PAR_CLUSTER, 32);
+		intraRounds = Configuration.getInt(prefix + "." + PAR_INTRA, 20);
+		interRounds = Configuration.getInt(prefix + "." + PAR_INTER, 20);
+		prevWeightVector = new PrimalSVMWeights(new TreeMap<Integer, Double>());
+		flow = new PushFlow();
+		loss = Configuration.getDouble(prefix + "." + PAR_LOSS, 0.0);
 	}
 
 	/**
@@ -137,32 +279,47 @@ public class GadgetProtocol4 implements CDProtocol {
 		GadgetProtocol4 gp = null;
 		try { gp = (GadgetProtocol4)super.clone(); }
 		catch( CloneNotSupportedException e ) {} // never happens
+		// every node needs its own registers, not the prototype's ones
+		gp.primalSlot = null;
+		gp.setPrimal(new PrimalSVMWeights(new TreeMap<Integer, Double>()));
+		gp.oldWeightVector = new PrimalSVMWeights(new TreeMap<Integer, Double>());
+		gp.prevWeightVector = new PrimalSVMWeights(new TreeMap<Integer, Double>());
+		gp.headSum = null;
+		gp.solver = (LocalSolver)solver.clone();
+		gp.flow = (PushFlow)flow.clone();
 		return gp;
 	}
 	
 	private void pushsum1(Node node, PegasosNode pn, int pid) {
 		PegasosNode peer = (PegasosNode)selectNeighbor(node, pid);
+		// an exchange with a failed peer does not happen, no mass moves
+		if(peer == null || !peer.isUp())
+			return;
 		if(Debug.ON) {
 			//System.out.println("Node [" + pn.getID() + "] is gossiping with Node [" + peer.getID() + "]" );
 		}
 		// now add pn.wtvector and peer.wtvector
 		//Iterator<Integer> n_it = pn.wtvector.getWeights().keySet().iterator();
-		Iterator<Integer> p_it = peer.wtvector.getWeights().keySet().iterator();
+		Iterator<Integer> p_it = peer.getWtvector().getWeights().keySet().iterator();
 		while (p_it.hasNext()) {
 			// w and l are sorted
 			Integer index = p_it.next();
-			if(pn.wtvector.getWeights().containsKey(index)) {
-				pn.wtvector.addFeature(index,  
-						(peer.wtvector.getWeights().get(index) +
-						pn.wtvector.getWeights().get(index))/2);
+			if(pn.getWtvector().getWeights().containsKey(index)) {
+				pn.getWtvector().addFeature(index,  
+						(peer.getWtvector().getWeights().get(index) +
+						pn.getWtvector().getWeights().get(index))/2);
 			}
 			else {
-				pn.wtvector.addFeature(index, 
-						peer.wtvector.getWeights().get(index)/2);
+				pn.getWtvector().addFeature(index, 
+						peer.getWtvector().getWeights().get(index)/2);
 			}
-			peer.wtvector.addFeature(index, pn.wtvector.getWeights().get(index));				
+			peer.getWtvector().addFeature(index, pn.getWtvector().getWeights().get(index));				
 			
 		} // push sum done
+		// the peer's vector goes to pn and the merged entries come back
+		RunStats.addEntries(2 * peer.getWtvector().getWeights().size());
+		if(solver.isAdaptive())
+			mixAccumulators(peer, pid);
 		//if(node.getID()==0) {
 		//}
 	}
@@ -185,83 +342,444 @@ public class GadgetProtocol4 implements CDProtocol {
 			Iterator<Integer> p_it = oldWeightVector.getWeights().keySet().iterator();
 			while (p_it.hasNext()) {
 				Integer index = p_it.next();
-				pn.wtvector.addFeature(index,oldWeightVector.getWeights().get(index));
+				pn.getWtvector().addFeature(index,oldWeightVector.getWeights().get(index));
 			}
 			pn.weight = oldWeight;
+			if(solver.isAdaptive())
+				solver.commitAccumulator();
 			pushsum2_execute = !pushsum2_execute;		
 			return;
 		}
 		
-		Iterator<Integer> p_it1 = pn.wtvector.getWeights().keySet().iterator();
+		// the views may have changed since the previous round: the first node
+		// of the round reweights all their links, so that every node mixes
+		// with the same doubly stochastic B
+		if(maintainer != null && maintainedAt != CommonState.getTime()) {
+			maintainedAt = CommonState.getTime();
+			maintain();
+		}
+		
+		Iterator<Integer> p_it1 = pn.getWtvector().getWeights().keySet().iterator();
 		while (p_it1.hasNext()) {
 			// w and l are sorted
 			Integer index = p_it1.next();
-			oldWeightVector.addFeature(index,optimalB[(int)node.getID()][(int)node.getID()]*pn.wtvector.getWeights().get(index));
+			oldWeightVector.addFeature(index,optimalB[(int)node.getID()][(int)node.getID()]*pn.getWtvector().getWeights().get(index));
 		}
 		oldWeight = optimalB[(int)node.getID()][(int)node.getID()]*pn.weight;					
-		List<Node> peers = getPeers(node);
+		List<Node> peers = (maintainer != null) ? linkedPeers(node) : getPeers(node);
 		for(Node peer1:peers) {
 			PegasosNode peer = (PegasosNode)peer1;
-			Iterator<Integer> p_it = peer.wtvector.getWeights().keySet().iterator();
+			Iterator<Integer> p_it = peer.getWtvector().getWeights().keySet().iterator();
 			while (p_it.hasNext()) {
 				// w and l are sorted
 				Integer index = p_it.next();
 				if(oldWeightVector.getWeights().containsKey(index)) {
 					oldWeightVector.addFeature(index,  
-							optimalB[(int)peer.getID()][(int)node.getID()]*peer.wtvector.getWeights().get(index) +
+							optimalB[(int)peer.getID()][(int)node.getID()]*peer.getWtvector().getWeights().get(index) +
 							oldWeightVector.getWeights().get(index));
 				}
 				else {
 					oldWeightVector.addFeature(index, 
-							optimalB[(int)peer.getID()][(int)node.getID()]*peer.wtvector.getWeights().get(index));
+							optimalB[(int)peer.getID()][(int)node.getID()]*peer.getWtvector().getWeights().get(index));
 				}
 			}
 			oldWeight += optimalB[(int)peer.getID()][(int)node.getID()]*peer.weight;												
+			RunStats.addEntries(peer.getWtvector().getWeights().size() + 1);
 		}// push sum done
+		if(solver.isAdaptive()) {
+			// the step size accumulators get the same mixing, B is doubly
+			// stochastic so they need no weight
+			List<LocalSolver> solvers = new ArrayList<LocalSolver>();
+			List<Double> b = new ArrayList<Double>();
+			solvers.add(solver);
+			b.add(optimalB[(int)node.getID()][(int)node.getID()]);
+			for(Node peer:peers) {
+				LocalSolver other = ((GadgetProtocol4)peer.getProtocol(pid)).solver;
+				solvers.add(other);
+				b.add(optimalB[(int)peer.getID()][(int)node.getID()]);
+				RunStats.addEntries(other.getAccumulator().size());
+			}
+			solver.mixAccumulator(solvers, b);
+		}
+		if(accel.equals("chebyshev"))
+			chebyshev(pn);
 		pushsum2_execute = !pushsum2_execute;
 		
 	}	
 	
-	private double[][] toMatrix(double[] array, int n) {
-		double[][] mat = new double[n][n];
+	/**
+	 * Applies the view changes of all nodes to optimalB at once, before any
+	 * node of the round mixes: updating it node by node would change the
+	 * weights of nodes that already mixed, and the round would not conserve
+	 * the push-sum mass. The SLEM is computed again when B changed.
+	 */
+	private static void maintain() {
+		byID = new Node[Network.size()];
+		for(int i=0;i<Network.size();i++) byID[(int)Network.get(i).getID()] = Network.get(i);
+		boolean changed = false;
+		for(Node n : byID) changed |= maintainer.update(optimalB, n);
+		if(changed) {
+			slem = Spectral.slem(optimalB);
+			bVersion++;
+		}
+	}
+	
+	/**
+	 * The peers node mixes with under the maintainer: its links in optimalB,
+	 * which newscast may have changed in its view since the round started
+	 */
+	private static List<Node> linkedPeers(Node node) {
+		int[] links = maintainer.getLinks((int)node.getID());
+		List<Node> l = new ArrayList<Node>(links.length);
+		for(int j : links) l.add(byID[j]);
+		return l;
+	}
+	
+	/**
+	 * Turns the plain round x_k+1 = B'x_k computed in oldWeightVector into the
+	 * Chebyshev semi-iterative round
+	 * x_k+1 = omega_k+1 * B'x_k + (1 - omega_k+1) * x_k-1
+	 * with omega_1 = 1, omega_2 = 2/(2 - s^2), omega_k+1 = 1/(1 - s^2 * omega_k / 4),
+	 * s being the SLEM of optimalB; the recurrence restarts when the maintainer
+	 * changed optimalB. The average is preserved since the coefficients sum to
+	 * one, and the disagreement shrinks like (s / (1 + sqrt(1 - s^2)))^k
+	 * instead of s^k.
+	 */
+	private void chebyshev(PegasosNode pn) {
+		// x_k-1 and omega belong to the matrix they were computed with
+		if(accelVersion != bVersion) {
+			accelVersion = bVersion;
+			accelRound = 0;
+		}
+		accelRound++;
+		if(accelRound == 1 || slem <= 0.0 || slem >= 1.0)
+			omega = 1.0;
+		else if(accelRound == 2)
+			omega = 2.0 / (2.0 - slem * slem);
+		else
+			omega = 1.0 / (1.0 - slem * slem * omega / 4.0);
+		if(omega != 1.0) {
+			TreeMap<Integer, Double> bx = oldWeightVector.getWeights();
+			TreeMap<Integer, Double> prev = prevWeightVector.getWeights();
+			for (Map.Entry<Integer, Double> entry : bx.entrySet()) {
+				Double p = prev.get(entry.getKey());
+				double pval = (p == null) ? 0.0 : p;
+				entry.setValue(omega * entry.getValue() + (1 - omega) * pval);
+			}
+			for (Map.Entry<Integer, Double> entry : prev.entrySet()) {
+				if(!bx.containsKey(entry.getKey()))
+					bx.put(entry.getKey(), (1 - omega) * entry.getValue());
+			}
+			oldWeight = omega * oldWeight + (1 - omega) * prevWeight;
+		}
+		// x_k is still in pn until the commit half of the round
+		prevWeightVector = new PrimalSVMWeights(
+				new TreeMap<Integer, Double>(pn.getWtvector().getWeights()));
+		prevWeight = pn.weight;
+	}
+	
+	/**
+	 * Projects the weights of pn on the ball of radius 1/sqrt(lambda), as done
+	 * after every consensus phase, and adds the result to primal, the running
+	 * sum of the iterates.
+	 */
+	static void project(PegasosNode pn, double lambda, PrimalSVMWeights primal) {
+		PrimalSVMWeights w = pn.getWtvector();
+		double scale = Math.min(1.0, 1.0 / (Math.sqrt(lambda) * w.getL2Norm()));
+		for (Map.Entry<Integer, Double> entry : w.getWeights().entrySet()) {
+			w.addFeature(entry.getKey(), scale * entry.getValue());
+			if(primal.getWeights().containsKey(entry.getKey())) {
+				primal.getWeights().put(entry.getKey(), primal.getWeights().get(entry.getKey())+scale * entry.getValue());
+			}
+			else {
+				primal.getWeights().put(entry.getKey(), scale * entry.getValue());
+			}
+		}
+	}
+	
+	/**
+	 * Two level push-sum. The nodes are grouped into connected clusters of
+	 * protocol.1.cluster nodes (see {@link Clustering}); for protocol.1.intra
+	 * rounds every node averages with a random neighbour of its own cluster,
+	 * then for protocol.1.inter rounds only the cluster heads gossip, with
+	 * random heads of adjacent clusters, on (size * average, size) pairs so
+	 * that their ratio tends to the global average; in the next round every
+	 * node copies the estimate of its head. Until {@link PushSumObserver}
+	 * flags convergence the heads then go on gossiping from where they were,
+	 * with a copy to the nodes every protocol.1.inter rounds, so a phase never
+	 * stalls on heads that need more rounds. Intra-cluster rounds run in
+	 * parallel over small clusters and the head rounds over a network of
+	 * n/cluster nodes, instead of flat rounds over the whole network.
+	 * <p>
+	 * The clustering is built once, from the overlay of the first phase, and
+	 * never rebuilt when newscast rewires the overlay: the intra-cluster and
+	 * head links it uses may then no longer be links of the overlay.
+	 */
+	private void hierarchical(Node node, PegasosNode pn, int pid) {
+		if(clustering == null) {
+			clustering = new Clustering(Overlay.neighbours(lid), clusterSize);
+			System.out.println("[hierarchical] " + clustering.clusters() + " clusters of at most "
+					+ clusterSize + " nodes");
+		}
+		int id = (int)node.getID();
+		hierRound++;
+		if(hierRound <= intraRounds) {
+			int[] p = clustering.peers[id];
+			if(p.length > 0) {
+				PegasosNode peer = (PegasosNode)nodeWithID(p[CommonState.r.nextInt(p.length)]);
+				RunStats.addEntries(pn.getWtvector().getWeights().size() + peer.getWtvector().getWeights().size());
+				average(pn.getWtvector().getWeights(), peer.getWtvector().getWeights());
+				if(solver.isAdaptive())
+					mixAccumulators(peer, pid);
+			}
+		}
+		else if((hierRound - intraRounds - 1) % (interRounds + 1) < interRounds) {
+			int c = clustering.cluster[id];
+			int[] p = clustering.headPeers[c];
+			if(clustering.isHead(id) && p.length > 0) {
+				PegasosNode peer = (PegasosNode)nodeWithID(p[CommonState.r.nextInt(p.length)]);
+				GadgetProtocol4 self = initHead(pn);
+				GadgetProtocol4 other = ((GadgetProtocol4)peer.getProtocol(pid)).initHead(peer);
+				RunStats.addEntries(self.headSum.getWeights().size() + other.headSum.getWeights().size() + 2);
+				average(self.headSum.getWeights(), other.headSum.getWeights());
+				double w = (self.headWeight + other.headWeight) / 2;
+				self.headWeight = w;
+				other.headWeight = w;
+			}
+		}
+		else {
+			Node h = nodeWithID(clustering.head[clustering.cluster[id]]);
+			GadgetProtocol4 hp = ((GadgetProtocol4)h.getProtocol(pid)).initHead((PegasosNode)h);
+			TreeMap<Integer, Double> est = new TreeMap<Integer, Double>();
+			for (Map.Entry<Integer, Double> entry : hp.headSum.getWeights().entrySet()) {
+				est.put(entry.getKey(), entry.getValue() / hp.headWeight);
+			}
+			pn.getWtvector().setFeatures(est);
+			if(h != node)
+				RunStats.addEntries(est.size());
+		}
+	}
+	
+	/**
+	 * Starts the head rounds of this head from the cluster average it holds,
+	 * if not done yet in the current phase. A head can be contacted by another
+	 * one before its own turn of the first head round.
+	 */
+	private GadgetProtocol4 initHead(PegasosNode pn) {
+		if(!headInit) {
+			int size = clustering.size[clustering.cluster[(int)pn.getID()]];
+			TreeMap<Integer, Double> sum = new TreeMap<Integer, Double>();
+			for (Map.Entry<Integer, Double> entry : pn.getWtvector().getWeights().entrySet()) {
+				sum.put(entry.getKey(), size * entry.getValue());
+			}
+			headSum = new PrimalSVMWeights(sum);
+			headWeight = size;
+			headInit = true;
+		}
+		return this;
+	}
+	
+	/**
+	 * One round of the fault tolerant push-sum: drop the flows to dead peers,
+	 * then push half of the estimate to a random neighbour that is up. See
+	 * {@link PushFlow}.
+	 */
+	private void pushflow(Node node, PegasosNode pn, int pid) {
+		flow.dropDead();
+		PegasosNode peer = (PegasosNode)selectNeighbor(node, pid);
+		if(peer == null || !peer.isUp()) {
+			flow.estimate(pn);
+			return;
+		}
+		PushFlow other = ((GadgetProtocol4)peer.getProtocol(pid)).flow;
+		boolean lost = loss > 0 && CommonState.r.nextDouble() < loss;
+		RunStats.addEntries(flow.push(pn, peer, other, lost));
+	}
+	
+	/** Averages the adagrad accumulators of this node and the peer */
+	private void mixAccumulators(Node peer, int pid) {
+		TreeMap<Integer, Double> a = solver.getAccumulator();
+		TreeMap<Integer, Double> b = ((GadgetProtocol4)peer.getProtocol(pid)).solver.getAccumulator();
+		RunStats.addEntries(a.size() + b.size());
+		average(a, b);
+	}
+	
+	/** The push-flow state of this node, for the observers */
+	public PushFlow getFlow() {
+		return flow;
+	}
+	
+	/**
+	 * Writes the iteration state shared by all nodes, see {@link CheckpointControl}:
+	 * optimalB and its SLEM, which the maintainer may have changed since they
+	 * were built, the views of the maintainer and the clusters, since the
+	 * overlay they were built from is gone.
+	 */
+	static void saveGlobals(DataOutput out) throws IOException {
+		out.writeInt(t);
+		out.writeBoolean(flag);
+		out.writeBoolean(optimizationDone);
+		out.writeBoolean(end);
+		out.writeBoolean(pushsumobserverflag);
+		writeMatrix(out, optimalB);
+		out.writeDouble(slem);
+		out.writeBoolean(maintainer != null);
+		if(maintainer != null) maintainer.save(out);
+		out.writeBoolean(clustering != null);
+		if(clustering != null) clustering.save(out);
+	}
+	
+	static void loadGlobals(DataInput in) throws IOException {
+		t = in.readInt();
+		flag = in.readBoolean();
+		optimizationDone = in.readBoolean();
+		end = in.readBoolean();
+		pushsumobserverflag = in.readBoolean();
+		optimalB = readMatrix(in);
+		slem = in.readDouble();
+		maintainer = in.readBoolean() ? BMatrixMaintainer.load(in) : null;
+		clustering = in.readBoolean() ? Clustering.load(in) : null;
+	}
+	
+	/** Writes B by rows of (column, weight) pairs, B being mostly zeros */
+	private static void writeMatrix(DataOutput out, double[][] B) throws IOException {
+		if(B == null) {
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(B.length);
+		for(double[] row : B) {
+			int nnz = 0;
+			for(double b : row) if(b != 0.0) nnz++;
+			out.writeInt(nnz);
+			for(int j=0;j<row.length;j++) {
+				if(row[j] == 0.0) continue;
+				out.writeInt(j);
+				out.writeDouble(row[j]);
+			}
+		}
+	}
+	
+	private static double[][] readMatrix(DataInput in) throws IOException {
+		int n = in.readInt();
+		if(n < 0) return null;
+		if(n != Network.size())
+			throw new IOException("optimalB has " + n + " rows, the network " + Network.size());
+		double[][] B = new double[n][n];
 		for(int i=0;i<n;i++) {
-			for(int j=0;j<n;j++) {
-				mat[i][j] = array[i*n+j];
+			int nnz = in.readInt();
+			for(int k=0;k<nnz;k++) B[i][in.readInt()] = in.readDouble();
+		}
+		return B;
+	}
+	
+	/**
+	 * Writes the state of this node's protocol and solver. optimalB and the
+	 * clusters are shared, see {@link #saveGlobals}.
+	 */
+	void save(DataOutput out) throws IOException {
+		out.writeInt(pushsumflag);
+		SparseVectorCodec.write(out, primal().getWeights(), SparseVectorCodec.RAW);
+		SparseVectorCodec.write(out, oldWeightVector.getWeights(), SparseVectorCodec.RAW);
+		out.writeDouble(oldWeight);
+		out.writeBoolean(pushsum2_execute);
+		out.writeInt(hierRound);
+		out.writeBoolean(headInit);
+		SparseVectorCodec.write(out, (headSum == null) ? null : headSum.getWeights(), SparseVectorCodec.RAW);
+		out.writeDouble(headWeight);
+		SparseVectorCodec.write(out, prevWeightVector.getWeights(), SparseVectorCodec.RAW);
+		out.writeDouble(prevWeight);
+		out.writeInt(accelRound);
+		out.writeDouble(omega);
+		flow.save(out);
+		solver.save(out);
+	}
+	
+	/** Reads what {@link #save} wrote, nodes giving the nodes by ID */
+	void load(DataInput in, Map<Long, Node> nodes) throws IOException {
+		pushsumflag = in.readInt();
+		setPrimal(new PrimalSVMWeights(SparseVectorCodec.read(in)));
+		oldWeightVector = new PrimalSVMWeights(SparseVectorCodec.read(in));
+		oldWeight = in.readDouble();
+		pushsum2_execute = in.readBoolean();
+		hierRound = in.readInt();
+		headInit = in.readBoolean();
+		TreeMap<Integer, Double> head = SparseVectorCodec.read(in);
+		headSum = (head == null) ? null : new PrimalSVMWeights(head);
+		headWeight = in.readDouble();
+		prevWeightVector = new PrimalSVMWeights(SparseVectorCodec.read(in));
+		prevWeight = in.readDouble();
+		accelRound = in.readInt();
+		omega = in.readDouble();
+		flow.load(in, nodes);
+		solver.load(in);
+	}
+	
+	/**
+	 * The node counting the iterations: the first node of the network that is
+	 * up, so that the count goes on when node 0 fails.
+	 */
+	private static boolean isLeader(Node node) {
+		for(int i=0;i<Network.size();i++) {
+			if(Network.get(i).isUp())
+				return Network.get(i) == node;
+		}
+		return false;
+	}
+	
+	/** Both maps get the average of the two, over the union of their keys */
+	static void average(TreeMap<Integer, Double> a, TreeMap<Integer, Double> b) {
+		for (Map.Entry<Integer, Double> entry : a.entrySet()) {
+			Double bv = b.get(entry.getKey());
+			double avg = (entry.getValue() + (bv == null ? 0.0 : bv)) / 2;
+			entry.setValue(avg);
+			b.put(entry.getKey(), avg);
+		}
+		for (Map.Entry<Integer, Double> entry : b.entrySet()) {
+			if(!a.containsKey(entry.getKey())) {
+				double avg = entry.getValue() / 2;
+				entry.setValue(avg);
+				a.put(entry.getKey(), avg);
 			}
 		}
-		return mat;
+	}
+	
+	/** The node with the given ID, IDs being the network indices as for optimalB */
+	private static Node nodeWithID(int id) {
+		if(id < Network.size() && Network.get(id).getID() == id) return Network.get(id);
+		for(int i=0;i<Network.size();i++) {
+			if(Network.get(i).getID() == id) return Network.get(i);
+		}
+		return null;
 	}
 	
 	private void generateOptimalB() {
-		int networkSize = Network.size();
-		optimalB = new double[networkSize][networkSize];
-		int[][] adjM = new int[networkSize][networkSize];
-		for(int i=0;i<networkSize;i++) {
-			Node n = Network.get(i);
-			Linkable l = (Linkable) n.getProtocol(lid);
-			for(int j=0;j<l.degree();j++) {
-				Node ne = l.getNeighbor(j);
-				adjM[i][(int)ne.getID()] = 1;				
-			}			
+		BMatrixBuilder builder = BMatrixBuilder.create(bmatrix, gap);
+		long start = System.currentTimeMillis();
+		BMatrixCache cache = null;
+		String key = null;
+		if(bcache != null) {
+			cache = new BMatrixCache(bcache, bcacheSize);
+			key = BMatrixCache.key(bmatrix.equals(BMatrixBuilder.AUTO) ? bmatrix + gap : bmatrix,
+					Overlay.neighbours(lid));
+			optimalB = cache.get(key);
+			if(optimalB != null && optimalB.length == Network.size()) {
+				System.out.println("[bmatrix] found in cache: " + key);
+				slem = builder.report(optimalB, System.currentTimeMillis() - start);
+				if(BMatrixCache.isValid(optimalB, slem)) return;
+				System.err.println("[bmatrix] warning: cached " + key + " is not a mixing"
+						+ " doubly stochastic matrix, rebuilding it");
+			}
+		}
+		optimalB = builder.build(lid);
+		slem = builder.report(optimalB, System.currentTimeMillis() - start);
+		if(cache != null) {
+			if(builder.isCacheable() && BMatrixCache.isValid(optimalB, slem))
+				cache.put(key, optimalB);
+			else
+				System.err.println("[bmatrix] warning: " + builder.getName()
+						+ " matrix not cached: a fallback, or not a mixing doubly stochastic matrix");
 		}
-        try {
-            MatlabClient matlabClient = new MatlabClient(
-                    MatlabCaller.HOST_ADDRESS,
-                    "/home/raghuram/MATLAB/R2012a/bin/matlab.exe",40);
-            Object[] inArgs = new Object[1];
-            inArgs[0] = adjM;
-            Object[] outputArgs = matlabClient.executeMatlabFunction("fmmc",
-                    inArgs, 2);
-            //System.out.println("outputArgs[0]=" + Arrays.toString((double[])outputArgs[0]));
-            double[] prob = (double[])outputArgs[0]; 
-            optimalB = toMatrix(prob,networkSize);            
-            matlabClient.shutDownServer();
- 
-        } catch (JamalException e) {
-            e.printStackTrace();
-        } catch (Exception e) {
-        	e.printStackTrace();
-        }
 	}
 	
 	private void printBMatrix() {
@@ -288,12 +806,19 @@ public class GadgetProtocol4 implements CDProtocol {
 
 		PegasosNode pn = (PegasosNode)node;
 
-		if(node.getID()==0 && pushsumflag == 0)	t++;
+		if(pushsumflag == 0 && isLeader(node))	{
+			t++;
+			// every node projected its model of the previous iteration
+			if(t > 1 && t <= T + 1)
+				RunStats.report(protocol, t - 1, lambda);
+		}
 		
 		if(protocol.equals("pushsum2")) {
 			if(!optimizationDone) {
 				generateOptimalB();
 				printBMatrix();
+				if(dynamic)
+					maintainer = new BMatrixMaintainer(lid);
 				optimizationDone = true;
 				GadgetProtocol3.writeIntoFile(System.currentTimeMillis());
 			}		
@@ -301,123 +826,50 @@ public class GadgetProtocol4 implements CDProtocol {
 
 		if(t>T) {
 			end = true;
-			for (Map.Entry<Integer, Double> entry : pn.wtvector.getWeights().entrySet()) {
-				pn.wtvector.addFeature(entry.getKey(), primalSVMWeights.getWeights().get(entry.getKey())/T);		
+			PrimalSVMWeights w = pn.getWtvector();
+			TreeMap<Integer, Double> sum = primal().getWeights();
+			for (Map.Entry<Integer, Double> entry : w.getWeights().entrySet()) {
+				w.addFeature(entry.getKey(), sum.get(entry.getKey())/T);		
 			}			
 			return;
 		}
 		else if(pushsumflag == 1 && !pushsumobserverflag) {
 			if(protocol.equals("pushsum2"))
 				pushsum2(node, pn, pid);
+			else if(protocol.equals("hierarchical"))
+				hierarchical(node, pn, pid);
+			else if(protocol.equals("pushflow"))
+				pushflow(node, pn, pid);
 			else
 				pushsum1(node, pn, pid);				
 			return;
 		}
 		else if(pushsumflag == 1) {
-			double scale = Math.min(1.0, 1.0 / (Math.sqrt(lambda) * pn.wtvector.getL2Norm()));
-			for (Map.Entry<Integer, Double> entry : pn.wtvector.getWeights().entrySet()) {
-				pn.wtvector.addFeature(entry.getKey(), scale * entry.getValue());
-				if(primalSVMWeights.getWeights().containsKey(entry.getKey())) {
-					primalSVMWeights.getWeights().put(entry.getKey(), primalSVMWeights.getWeights().get(entry.getKey())+scale * entry.getValue());
-				}
-				else {
-					primalSVMWeights.getWeights().put(entry.getKey(), scale * entry.getValue());					
-				}
-				// also set the peers weight same
-				//peer.wtvector.addFeature(entry.getKey(), (1.0 + scale) * entry.getValue());			
-			}
-			// normalize both weights
-			//pn.wtvector.normalizeWeights();
-			//peer.wtvector.normalizeWeights();
+			project(pn, lambda, primal());
 			resetflagto = 0;		
 			if(protocol.equals("pushsum2")) {
 				pushsum2_execute = true;
-				pn.weight = pn.traindataset.length;
-				Iterator<Integer> p_it = pn.wtvector.getWeights().keySet().iterator();
+				pn.weight = pn.getShardSize();
+				Iterator<Integer> p_it = pn.getWtvector().getWeights().keySet().iterator();
 				while (p_it.hasNext()) {
 					Integer index = p_it.next();
-					pn.wtvector.addFeature(index,pn.wtvector.getWeights().get(index)/pn.weight);
+					pn.getWtvector().addFeature(index,pn.getWtvector().getWeights().get(index)/pn.weight);
 				}					
 			}
 		}
 		else if(pushsumflag == 0) {
-
-		TreeMap<Integer, Double> L = new TreeMap<Integer, Double>();
-		
-		//System.out.println("current node ID: [" + pn.getID() + "]");
-
-		int N = pn.traindataset.length;	// #data points
-		double y;	// label
-		// reset the weights at start as in the first line of GADGET
-	        //pn.wtvector.resetWeights();
-		if(flag==false) {
-			GadgetProtocol.writeIntoFile(String.valueOf(System.currentTimeMillis()));
-			flag = true;
-		}
-			pn.misclassified = 0;	// reset the misclassified count in each iter
-			for (int n = 0; n < N; n++) { // data point loop
-				y = pn.traindataset[n].getLabel();
-				int xsize = pn.traindataset[n].size();
-				double dotprod = 0.0;
-
-				// calculate <w,x> using two iterator which moves over x[i] and w
-				for (int xiter = 0; xiter < xsize; xiter++) { // dot product loop
-					int xdim = pn.traindataset[n].getDimAt(xiter);
-					double xval = pn.traindataset[n].getValueAt(xiter);
-					if(pn.wtvector.getWeights().containsKey(xdim)) {// wtvector has this dim
-						double wval = pn.wtvector.getWeights().get(xdim);
-						dotprod += xval * wval;
-					}
-
-				}// dot product loop end
-				if ((y * dotprod) < 1) { // this point is in Si+
-					if((y * dotprod) < 0) pn.misclassified++;
-						//pn.misclassified++;
-					// Li calculated.
-					for(int xiter = 0; xiter < xsize; xiter++) {// xsize loop
-						int xkey = pn.traindataset[n].getDimAt(xiter);
-						double xval = pn.traindataset[n].getValueAt(xiter);
-						if(L.containsKey(xkey)) {
-							L.put(xkey, L.get(xkey) + y * xval);
-						}
-						else
-							L.put(xkey, y * xval);
-					}//xsize loop
-				}
-
-			} // data point loop end
-			if(Debug.ON) {
-				System.out.println("[DEBUG] #misclassified at node[" + pn.getID() + "] : "
-							+ pn.misclassified);
-			}
-			double alpha = 1.0 / (lambda * t); // our loop starts from 0
-			//calculate w_t1/2, what is ni??
-			Iterator<Integer> w_it = pn.wtvector.getWeights().keySet().iterator();
-			Iterator<Integer> l_it = L.keySet().iterator();
-			// Lots of confusion, so do it in two step
-			// inefficient but clean
-			while (w_it.hasNext()) {
-				Integer index = w_it.next();
-				// not sure if first term should be multiplied by N
-				double newval = (1 - lambda * alpha) * N * pn.wtvector.getWeights().get(index);
-				//double newval = (1 - lambda * alpha) * pn.wtvector.getWeights().get(index);
-				pn.wtvector.addFeature(index, newval);		
+			if(flag==false) {
+				GadgetProtocol.writeIntoFile(String.valueOf(System.currentTimeMillis()));
+				flag = true;
 			}
-			while (l_it.hasNext()) {
-				Integer index = l_it.next();
-				double lossterm = L.get(index);
-				if(pn.wtvector.getWeights().containsKey(index)) {
-					pn.wtvector.addFeature(index, alpha * lossterm + 
-							pn.wtvector.getWeights().get(index));
-				}
-				else {
-					pn.wtvector.addFeature(index, alpha * lossterm);
-				}
-			} // ~w_t1/2 calculated, now do push sum
-			//System.out.println(pn.wtvector.getWeights().firstEntry().getValue()+",,,,,,,,,,,,");
-
+			solver.step(pn, lambda, t);
 			resetflagto = 1;
 			pushsumobserverflag = false;
+			// a new consensus phase starts from scratch
+			accelRound = 0;
+			hierRound = 0;
+			headInit = false;
+			flow.reset();
 		}
 		pushsumflag = resetflagto;
 			//System.out.println("[iteration: " + t + "] local weight norm at node [" +
@@ -442,4 +894,19 @@ public class GadgetProtocol4 implements CDProtocol {
 			return null;
 	}
 
+
+	/** The running sum of the iterates, in the arena with the weights */
+	private PrimalSVMWeights primal() {
+		return (primalSlot != null) ? primalSlot.get() : primalSVMWeights;
+	}
+
+	private void setPrimal(PrimalSVMWeights w) {
+		SparseArena arena = PegasosNode.getArena();
+		if(arena == null) primalSVMWeights = w;
+		else if(primalSlot == null) {
+			primalSVMWeights = null;
+			primalSlot = arena.newSlot(w);
+		}
+		else primalSlot.set(w);
+	}
 }
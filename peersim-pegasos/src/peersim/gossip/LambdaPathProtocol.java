@@ -0,0 +1,155 @@
+/*
+ * Peersim-Gadget : A Gadget protocol implementation in peersim based on the paper
+ * Chase Henzel, Haimonti Dutta
+ * GADGET SVM: A Gossip-bAseD sub-GradiEnT SVM Solver
+ *
+ * Copyright (C) 2012
+ * Deepak Nayak
+ * Columbia University, Computer Science MS'13
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package peersim.gossip;
+
+import java.io.File;
+
+import jnisvmlight.LabeledFeatureVector;
+import jnisvmlight.SVMLightInterface;
+
+import peersim.config.Configuration;
+import peersim.config.IllegalParameterException;
+import peersim.core.*;
+
+/**
+ * Class LambdaPathProtocol
+ * GADGET for a whole list of lambdas in one simulation, see
+ * {@link BankProtocol}: model k is trained with the k-th lambda of
+ * protocol.1.lambdas, all models starting from the node's local model.
+ * Shards, initial models and the overlay are shared by all lambdas.
+ * <p>
+ * At the end it prints, for every lambda, the objective and the training
+ * error of the averaged models, and every node writes the model of every
+ * lambda to global_&lt;id&gt;_lambda_&lt;lambda&gt;.dat in resourcepath. The
+ * training error almost always favours the smallest lambda, so it is not
+ * used to choose one: with protocol.1.holdout the error of the nodes'
+ * models on those held-out points is printed too, and the nodes keep the
+ * model of the lambda with the lowest held-out error in their weight
+ * vector. Without it the weight vectors are left alone and the choice is
+ * left to the user.
+ */
+public class LambdaPathProtocol extends BankProtocol {
+	/**
+	 * Config option giving the lambdas, separated by commas or spaces
+	 * @config
+	 */
+	private static final String PAR_LAMBDAS = "lambdas";
+	/**
+	 * Config option giving an svmlight file of points held out of training,
+	 * on which the lambda kept is chosen. By default none is chosen.
+	 * @config
+	 */
+	private static final String PAR_HOLDOUT = "holdout";
+
+	protected double[] lambdas;
+
+	/** Held-out points, null without protocol.1.holdout */
+	private static LabeledFeatureVector[] holdout;
+
+	public LambdaPathProtocol(String prefix) {
+		super(prefix);
+		String[] list = Configuration.getString(prefix + "." + PAR_LAMBDAS).trim().split("[,\\s]+");
+		lambdas = new double[list.length];
+		for (int k = 0; k < list.length; k++)
+			lambdas[k] = Double.parseDouble(list[k]);
+		if(Configuration.contains(prefix + "." + PAR_HOLDOUT)) {
+			String file = Configuration.getString(prefix + "." + PAR_HOLDOUT);
+			try {
+				holdout = SVMLightInterface.getLabeledFeatureVectorsFromURL(
+						new File(file).toURI().toURL(), 0);
+			}
+			catch (Exception e) {
+				throw new IllegalParameterException(prefix + "." + PAR_HOLDOUT,
+						"cannot read " + file + ": " + e);
+			}
+		}
+	}
+
+	protected int models() { return lambdas.length; }
+
+	protected double lambda(int k) { return lambdas[k]; }
+
+	protected double label(LabeledFeatureVector x, int k) { return x.getLabel(); }
+
+	protected void init(PegasosNode pn) {
+		for (int k = 0; k < lambdas.length; k++)
+			bank.load(k, pn.getWtvector().getWeights());
+	}
+
+	/**
+	 * Prints the path and writes its models; with held-out points, leaves the
+	 * model of the best lambda on them in the weight vectors
+	 */
+	protected void report(int pid) {
+		double[] heldout = (holdout != null) ? heldOutErrors(pid) : null;
+		int best = 0;
+		double p = Math.max(1, points);
+		for (int k = 0; k < lambdas.length; k++) {
+			System.out.println("[lambdapath] lambda " + lambdas[k] + ": objective "
+					+ (regularizer[k] + hinge[k] / p) + ", training error "
+					+ errors[k] / p
+					+ ((heldout != null) ? ", held-out error " + heldout[k] : ""));
+			if(heldout != null && heldout[k] < heldout[best]) best = k;
+		}
+		for(int i=0;i<Network.size();i++) {
+			PegasosNode pn = (PegasosNode)Network.get(i);
+			WeightBank bank = ((BankProtocol)pn.getProtocol(pid)).getBank();
+			for (int k = 0; k < lambdas.length; k++)
+				pn.writeWeights("global_" + pn.getID() + "_lambda_" + lambdas[k], bank.toWeights(k));
+		}
+		if(heldout == null) {
+			System.out.println("[lambdapath] no held-out points (protocol.1.holdout), the"
+					+ " weight vectors are left as they were; the model of every lambda is in"
+					+ " global_<id>_lambda_<lambda>.dat");
+			return;
+		}
+		System.out.println("[lambdapath] keeping lambda " + lambdas[best]
+				+ ", lowest held-out error");
+		for(int i=0;i<Network.size();i++) {
+			PegasosNode pn = (PegasosNode)Network.get(i);
+			pn.getWtvector().setFeatures(((BankProtocol)pn.getProtocol(pid)).getBank().toWeights(best));
+		}
+	}
+
+	/** Error of every lambda on the held-out points, averaged over the nodes */
+	private double[] heldOutErrors(int pid) {
+		int K = lambdas.length;
+		double[] err = new double[K];
+		double[] margins = new double[K];
+		PegasosNode first = (PegasosNode)Network.get(0);
+		LabeledFeatureVector[] points = new LabeledFeatureVector[holdout.length];
+		// hashed as the shards are
+		for (int n = 0; n < holdout.length; n++) points[n] = first.toShard(holdout[n]);
+		for(int i=0;i<Network.size();i++) {
+			WeightBank bank = ((BankProtocol)Network.get(i).getProtocol(pid)).getBank();
+			for (LabeledFeatureVector x : points) {
+				bank.margins(x, margins);
+				for (int k = 0; k < K; k++)
+					if(x.getLabel() * margins[k] <= 0) err[k]++;
+			}
+		}
+		for (int k = 0; k < K; k++) err[k] /= Math.max(1, (long)Network.size() * points.length);
+		return err;
+	}
+}
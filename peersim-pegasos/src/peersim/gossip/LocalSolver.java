@@ -0,0 +1,112 @@
+/*
+ * Peersim-Gadget : A Gadget protocol implementation in peersim based on the paper
+ * Chase Henzel, Haimonti Dutta
+ * GADGET SVM: A Gossip-bAseD sub-GradiEnT SVM Solver
+ *
+ * Copyright (C) 2012
+ * Deepak Nayak
+ * Columbia University, Computer Science MS'13
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package peersim.gossip;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+import java.util.TreeMap;
+
+import peersim.config.Configuration;
+
+/**
+ * Class LocalSolver
+ * The local work a node does on its shard between two consensus phases. The
+ * protocols only call {@link #step}, which reads the node's weights and
+ * writes the node's contribution to the next consensus phase, N times the
+ * new local iterate as the original GADGET step does (N the shard size),
+ * so that pushsum2 weights stay right whatever the solver. Every protocol
+ * instance holds its own solver, so that solvers can keep state about the
+ * node's shard between iterations.
+ * The solver is selected with protocol.1.solver, see {@link #create(String)}.
+ */
+public abstract class LocalSolver implements Cloneable {
+
+	/** one subgradient step, see {@link SubgradientSolver} */
+	public static final String SUBGRADIENT = "subgradient";
+	/** passes of dual coordinate descent, see {@link SdcaSolver} */
+	public static final String SDCA = "sdca";
+
+	/**
+	 * Config option of the protocol selecting the local solver, subgradient
+	 * (default) or sdca
+	 * @config
+	 */
+	private static final String PAR_SOLVER = "solver";
+
+	/** Returns the solver configured for the protocol with the given prefix */
+	public static LocalSolver create(String prefix) {
+		String name = Configuration.getString(prefix + "." + PAR_SOLVER, SUBGRADIENT);
+		if(name.equals(SUBGRADIENT)) return new SubgradientSolver(prefix);
+		if(name.equals(SDCA)) return new SdcaSolver(prefix);
+		throw new IllegalArgumentException("unknown local solver: " + name);
+	}
+
+	/**
+	 * Performs the local work of iteration t on the weights of pn.
+	 */
+	public abstract void step(PegasosNode pn, double lambda, int t);
+
+	/**
+	 * True if the solver has per feature state that push-sum has to mix
+	 * along with the weights, see {@link #getAccumulator}
+	 */
+	public boolean isAdaptive() {
+		return false;
+	}
+
+	/** The state push-sum mixes, null if not adaptive */
+	public TreeMap<Integer, Double> getAccumulator() {
+		return null;
+	}
+
+	/**
+	 * pushsum2: mixes the state of the given solvers with the given weights,
+	 * the result becoming the state at {@link #commitAccumulator}
+	 */
+	public void mixAccumulator(List<LocalSolver> solvers, List<Double> weights) {
+	}
+
+	/** pushsum2: the mixed state replaces the current one */
+	public void commitAccumulator() {
+	}
+
+	/**
+	 * Writes the state the next steps depend on, see
+	 * {@link CheckpointControl}; caches that can be rebuilt from the shard
+	 * are left out
+	 */
+	public void save(DataOutput out) throws IOException {
+	}
+
+	/** Reads what {@link #save} wrote */
+	public void load(DataInput in) throws IOException {
+	}
+
+	public Object clone() {
+		try { return super.clone(); }
+		catch( CloneNotSupportedException e ) { return null; } // never happens
+	}
+}
@@ -0,0 +1,52 @@
+/*
+ * Peersim-Gadget : A Gadget protocol implementation in peersim based on the paper
+ * Chase Henzel, Haimonti Dutta
+ * GADGET SVM: A Gossip-bAseD sub-GradiEnT SVM Solver
+ *
+ * Copyright (C) 2012
+ * Deepak Nayak
+ * Columbia University, Computer Science MS'13
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package peersim.gossip;
+
+/**
+ * Class MetropolisBMatrix
+ * Metropolis-Hastings weights B[i][j] = 1/(1 + max(d_i, d_j)) on the reciprocal
+ * links. Each weight only needs the degrees of the two end points.
+ */
+public class MetropolisBMatrix extends BMatrixBuilder {
+
+	public String getName() { return METROPOLIS; }
+
+	public double[][] build(int lid) {
+		int[][] mut = Overlay.mutual(Overlay.neighbours(lid));
+		int n = mut.length;
+		double[][] B = new double[n][n];
+		for(int i=0;i<n;i++) {
+			for(int j : mut[i]) {
+				B[i][j] = weight(mut[i].length, mut[j].length);
+			}
+		}
+		fillDiagonal(B);
+		return B;
+	}
+
+	/** Metropolis-Hastings weight of a link between nodes of degree di and dj */
+	static double weight(int di, int dj) {
+		return 1.0 / (1.0 + Math.max(di, dj));
+	}
+}
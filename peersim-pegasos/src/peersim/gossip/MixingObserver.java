@@ -0,0 +1,212 @@
+/*
+ * Peersim-Gadget : A Gadget protocol implementation in peersim based on the paper
+ * Chase Henzel, Haimonti Dutta
+ * GADGET SVM: A Gossip-bAseD sub-GradiEnT SVM Solver
+ *
+ * Copyright (C) 2012
+ * Deepak Nayak
+ * Columbia University, Computer Science MS'13
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package peersim.gossip;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import peersim.config.*;
+import peersim.core.*;
+import peersim.util.IncrementalStats;
+
+/**
+ * Reports how well the overlay mixes. At the first run and whenever the links
+ * of the {@link Linkable} change, it estimates the second largest eigenvalue
+ * modulus of the gossip matrix, both for the uniform neighbour selection of
+ * pushsum1 and for optimalB of pushsum2 (see {@link Spectral}). For every
+ * push-sum phase of {@link GadgetProtocol4} it then prints the number of
+ * cycles the spectrum predicts next to the number of cycles the phase actually
+ * took before {@link PushSumObserver} declared convergence.
+ * <p>
+ * A slow run whose observed rounds match the prediction is topology-bound; if
+ * the observed rounds are far above the prediction the time goes elsewhere.
+ */
+public class MixingObserver implements Control {
+
+    // /////////////////////////////////////////////////////////////////////
+    // Constants
+    // /////////////////////////////////////////////////////////////////////
+
+    /**
+     * The accuracy used by {@link PushSumObserver}, the predicted rounds are
+     * the rounds needed to bring the disagreement below it.
+     * 
+     * @config
+     */
+    private static final String PAR_ACCURACY = "accuracy";
+
+    /**
+     * The GADGET protocol to operate on, its linkable gives the overlay.
+     * 
+     * @config
+     */
+    private static final String PAR_PROT = "protocol";
+
+    /**
+     * The push-sum variant in use (pushsum1 or pushsum2), as for
+     * {@link PushSumObserver}.
+     * 
+     * @config
+     */
+    private static final String PAR_PUSHSUM = "prot";
+
+    /**
+     * The acceleration used by pushsum2, as protocol.1.accel.
+     * 
+     * @config
+     */
+    private static final String PAR_ACCEL = "accel";
+
+    // /////////////////////////////////////////////////////////////////////
+    // Fields
+    // /////////////////////////////////////////////////////////////////////
+
+    /** The name of this observer in the configuration */
+    private final String name;
+
+    private final double accuracy;
+
+    /** Linkable identifier */
+    private final int lid;
+
+    private final String protocol;
+
+    private final String accel;
+
+    /** fingerprint of the overlay the estimates belong to */
+    private long fingerprint = 0;
+
+    private boolean measured = false;
+
+    /** per cycle contraction of pushsum1 */
+    private double uniformRate = -1;
+
+    /** the optimalB the estimate belongs to */
+    private double[][] lastB = null;
+
+    private double bSlem = -1;
+
+    /** cycles spent in the current push-sum phase */
+    private int rounds = 0;
+
+    /** disagreement at the start of the current phase */
+    private double spread = 0;
+
+    // /////////////////////////////////////////////////////////////////////
+    // Constructor
+    // /////////////////////////////////////////////////////////////////////
+
+    /**
+     * Creates a new observer reading configuration parameters.
+     */
+    public MixingObserver(String name) {
+        this.name = name;
+        accuracy = Configuration.getDouble(name + "." + PAR_ACCURACY, 0.00001);
+        lid = FastConfig.getLinkable(Configuration.getPid(name + "." + PAR_PROT));
+        protocol = Configuration.getString(name + "." + PAR_PUSHSUM, "pushsum1");
+        accel = Configuration.getString(name + "." + PAR_ACCEL, "none");
+    }
+
+    // /////////////////////////////////////////////////////////////////////
+    // Methods
+    // /////////////////////////////////////////////////////////////////////
+
+    /**
+     * Re-estimates the mixing rates if the overlay changed, and reports the
+     * observed against the predicted rounds of each push-sum phase.
+     * 
+     * @return always false, this observer never stops the simulation.
+     */
+    public boolean execute() {
+        long time = CommonState.getTime();
+        int[][] nbrs = Overlay.neighbours(lid);
+        long fp = Overlay.fingerprint(nbrs);
+        if (!measured || fp != fingerprint) {
+            measured = true;
+            fingerprint = fp;
+            uniformRate = Spectral.uniformCycleRate(nbrs);
+            System.out.println(name + ": " + time + " overlay changed, pushsum1 "
+                    + "contraction per cycle " + uniformRate);
+        }
+        double[][] B = GadgetProtocol4.optimalB;
+        if (B != null && B != lastB) {
+            lastB = B;
+            bSlem = Spectral.slem(B);
+            System.out.println(name + ": " + time + " optimalB SLEM " + bSlem
+                    + ", spectral gap " + (1 - bSlem));
+        }
+
+        if (GadgetProtocol4.end) return false;
+        if (!GadgetProtocol4.pushsumobserverflag) {
+            if (rounds == 0) spread = disagreement();
+            rounds++;
+        } else if (rounds > 0) {
+            System.out.println(name + ": " + time + " push-sum rounds observed "
+                    + rounds + ", predicted " + predictedRounds(spread));
+            rounds = 0;
+        }
+        return false;
+    }
+
+    /**
+     * Cycles needed to shrink the disagreement from spread to the accuracy.
+     * A pushsum2 round takes two cycles, one to compute and one to commit.
+     */
+    private double predictedRounds(double spread) {
+        if (spread <= accuracy) return 0;
+        double target = accuracy / spread;
+        if (protocol.equals("pushsum2")) {
+            double rate = accel.equals("chebyshev") ? Spectral.chebyshevRate(bSlem) : bSlem;
+            return 2 * Spectral.roundsToAccuracy(rate, target);
+        }
+        return Spectral.roundsToAccuracy(uniformRate, target);
+    }
+
+    /**
+     * Largest standard deviation, over the features, of the values the nodes
+     * hold; the quantity {@link PushSumObserver} compares to the accuracy.
+     */
+    private double disagreement() {
+        TreeMap<Integer, IncrementalStats> stats = new TreeMap<Integer, IncrementalStats>();
+        for (int i = 0; i < Network.size(); i++) {
+            PegasosNode pn = (PegasosNode) Network.get(i);
+            for (Map.Entry<Integer, Double> entry : pn.getWtvector().getWeights().entrySet()) {
+                IncrementalStats is = stats.get(entry.getKey());
+                if (is == null) {
+                    is = new IncrementalStats();
+                    stats.put(entry.getKey(), is);
+                }
+                if (protocol.equals("pushsum2"))
+                    is.add(entry.getValue() / pn.weight);
+                else
+                    is.add(entry.getValue());
+            }
+        }
+        double max = 0;
+        for (IncrementalStats is : stats.values()) {
+            max = Math.max(max, is.getStD());
+        }
+        return max;
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Peersim-Gadget : A Gadget protocol implementation in peersim based on the paper
+ * Chase Henzel, Haimonti Dutta
+ * GADGET SVM: A Gossip-bAseD sub-GradiEnT SVM Solver
+ *
+ * Copyright (C) 2012
+ * Deepak Nayak
+ * Columbia University, Computer Science MS'13
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package peersim.gossip;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Class ModelExporter
+ * Writes the final weight vectors of all nodes at the end of a run, the
+ * nodes being encoded and written in parallel through NIO channels.
+ * <p>
+ * The binary export is a single indexed file: a header (magic, number of
+ * models), an index with the ID, offset and length of every model, then
+ * the models encoded by {@link SparseVectorCodec}, at the precision given
+ * to {@link #writeBinary}. A model is read back with one seek through the
+ * index, see {@link #read(File, long)}. The text export writes global_&lt;id&gt;.dat in
+ * the resourcepath of every node, in the svmlight format read by
+ * {@link TestClassifier}.
+ */
+public final class ModelExporter {
+
+	/** First int of a binary export, "GDM2" */
+	public static final int MAGIC = 0x47444d32;
+
+	/** Bytes of the header, magic and number of models */
+	private static final int HEADER = 8;
+
+	/** Bytes of an index entry, ID, offset and length */
+	private static final int INDEX_ENTRY = 20;
+
+	private ModelExporter() {}
+
+	/**
+	 * Writes the models of the nodes to file, with the given number of
+	 * threads, and returns the number of bytes written. precision is one of
+	 * those of {@link SparseVectorCodec}.
+	 */
+	public static long writeBinary(PegasosNode[] nodes, File file, int threads,
+			final int precision) throws IOException {
+		final int n = nodes.length;
+		long[] offsets = new long[n];
+		long offset = HEADER + (long)INDEX_ENTRY * n;
+		ByteBuffer head = ByteBuffer.allocate(HEADER + INDEX_ENTRY * n);
+		head.putInt(MAGIC).putInt(n);
+		for (int i = 0; i < n; i++) {
+			int length = SparseVectorCodec.encodedSize(nodes[i].getWtvector().getWeights(), precision);
+			offsets[i] = offset;
+			head.putLong(nodes[i].getID()).putLong(offset).putInt(length);
+			offset += length;
+		}
+		head.flip();
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(offset);
+			final FileChannel channel = raf.getChannel();
+			write(channel, head, 0);
+			List<Callable<Long>> tasks = new ArrayList<Callable<Long>>();
+			for (int i = 0; i < n; i++) {
+				final TreeMap<Integer, Double> weights = nodes[i].getWtvector().getWeights();
+				final long position = offsets[i];
+				tasks.add(new Callable<Long>() {
+					public Long call() throws IOException {
+						ByteBuffer buf = ByteBuffer.wrap(SparseVectorCodec.encode(weights, precision));
+						return write(channel, buf, position);
+					}
+				});
+			}
+			return head.limit() + run(tasks, threads);
+		}
+		finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Writes the model of every node to global_&lt;id&gt;.dat in its
+	 * resourcepath, with the given number of threads, and returns the
+	 * number of bytes written.
+	 */
+	public static long writeText(PegasosNode[] nodes, int threads) throws IOException {
+		List<Callable<Long>> tasks = new ArrayList<Callable<Long>>();
+		for (final PegasosNode pn : nodes) {
+			tasks.add(new Callable<Long>() {
+				public Long call() throws IOException {
+					StringBuilder sb = new StringBuilder();
+					for (Map.Entry<Integer, Double> entry : pn.getWtvector().getWeights().entrySet())
+						sb.append(entry.getKey()).append(':').append(entry.getValue()).append(' ');
+					ByteBuffer buf = ByteBuffer.wrap(sb.toString().getBytes("US-ASCII"));
+					FileOutputStream out = new FileOutputStream(
+							pn.getResourcePath() + "/global_" + pn.getID() + ".dat");
+					try {
+						return write(out.getChannel(), buf, 0);
+					}
+					finally {
+						out.close();
+					}
+				}
+			});
+		}
+		return run(tasks, threads);
+	}
+
+	/** The model of the node with the given ID in a binary export */
+	public static TreeMap<Integer, Double> read(File file, long id) throws IOException {
+		Map<Long, TreeMap<Integer, Double>> models = read(file, id, false);
+		if(models.isEmpty())
+			throw new IOException("no model of node " + id + " in " + file);
+		return models.get(id);
+	}
+
+	/** All models of a binary export by node ID, in the order of its index */
+	public static Map<Long, TreeMap<Integer, Double>> readAll(File file) throws IOException {
+		return read(file, -1, true);
+	}
+
+	/** Whether file starts like a binary export */
+	public static boolean isExport(File file) throws IOException {
+		if(file.length() < HEADER) return false;
+		FileInputStream in = new FileInputStream(file);
+		try {
+			return read(in.getChannel(), 0, HEADER).getInt() == MAGIC;
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	private static Map<Long, TreeMap<Integer, Double>> read(File file, long id, boolean all)
+			throws IOException {
+		Map<Long, TreeMap<Integer, Double>> models = new LinkedHashMap<Long, TreeMap<Integer, Double>>();
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+			ByteBuffer head = read(channel, 0, HEADER);
+			if(head.getInt() != MAGIC)
+				throw new IOException(file + " is not a model export");
+			int n = head.getInt();
+			ByteBuffer index = read(channel, HEADER, INDEX_ENTRY * n);
+			for (int i = 0; i < n; i++) {
+				long nodeId = index.getLong();
+				long offset = index.getLong();
+				int length = index.getInt();
+				if(!all && nodeId != id) continue;
+				models.put(nodeId, SparseVectorCodec.decode(read(channel, offset, length)));
+				if(!all) break;
+			}
+			return models;
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	private static long write(FileChannel channel, ByteBuffer buf, long position)
+			throws IOException {
+		long written = 0;
+		while(buf.hasRemaining())
+			written += channel.write(buf, position + written);
+		return written;
+	}
+
+	private static ByteBuffer read(FileChannel channel, long position, int length)
+			throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(length);
+		while(buf.hasRemaining()) {
+			if(channel.read(buf, position + buf.position()) < 0)
+				throw new IOException("truncated model export");
+		}
+		buf.flip();
+		return buf;
+	}
+
+	/** Runs the tasks on a pool of threads, returns the sum of their results */
+	private static long run(List<Callable<Long>> tasks, int threads) throws IOException {
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+		try {
+			long sum = 0;
+			for (Future<Long> f : pool.invokeAll(tasks))
+				sum += f.get();
+			return sum;
+		}
+		catch (InterruptedException e) {
+			throw new IOException("export interrupted");
+		}
+		catch (ExecutionException e) {
+			if(e.getCause() instanceof IOException) throw (IOException)e.getCause();
+			throw new RuntimeException(e.getCause());
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+}
@@ -0,0 +1,115 @@
+/*
+ * Peersim-Gadget : A Gadget protocol implementation in peersim based on the paper
+ * Chase Henzel, Haimonti Dutta
+ * GADGET SVM: A Gossip-bAseD sub-GradiEnT SVM Solver
+ *
+ * Copyright (C) 2012
+ * Deepak Nayak
+ * Columbia University, Computer Science MS'13
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package peersim.gossip;
+
+import java.util.TreeSet;
+
+import jnisvmlight.LabeledFeatureVector;
+
+import peersim.config.Configuration;
+import peersim.core.*;
+
+/**
+ * Class MultiClassProtocol
+ * One-vs-rest multi-class GADGET, see {@link BankProtocol}: model k separates
+ * the k-th class from all others, all with the same lambda. The classes are
+ * the distinct labels found in the shards of all nodes. The K models share
+ * one read of every point and one exchange per gossip round, instead of K
+ * simulations each rereading the data and running their own consensus.
+ * <p>
+ * At the end it prints the one-vs-rest error of every class and the training
+ * accuracy of predicting the class of the largest margin, and every node
+ * writes model k to global_&lt;id&gt;_class_&lt;label&gt;.dat in resourcepath.
+ */
+public class MultiClassProtocol extends BankProtocol {
+	/**
+	 * Config option to get the learning parameter lambda
+	 * @config
+	 */
+	private static final String PAR_LAMBDA = "lambda";
+
+	/** The labels of the classes, sorted */
+	private static double[] classes;
+
+	/** Points whose largest margin is the one of their class */
+	private static long correct = 0;
+
+	protected double lambda;
+
+	public MultiClassProtocol(String prefix) {
+		super(prefix);
+		lambda = Configuration.getDouble(prefix + "." + PAR_LAMBDA, 0.01);
+	}
+
+	protected int models() {
+		if(classes == null) {
+			TreeSet<Double> labels = new TreeSet<Double>();
+			for(int i=0;i<Network.size();i++) {
+				for(LabeledFeatureVector x : ((PegasosNode)Network.get(i)).getShard())
+					labels.add(x.getLabel());
+			}
+			classes = new double[labels.size()];
+			int k = 0;
+			for(Double l : labels) classes[k++] = l;
+			System.out.println("[multiclass] " + classes.length + " classes");
+		}
+		return classes.length;
+	}
+
+	protected double lambda(int k) { return lambda; }
+
+	protected double label(LabeledFeatureVector x, int k) {
+		return (x.getLabel() == classes[k]) ? 1.0 : -1.0;
+	}
+
+	protected void evaluate(LabeledFeatureVector x, double[] margins) {
+		int best = 0;
+		for (int k = 1; k < margins.length; k++) {
+			if(margins[k] > margins[best]) best = k;
+		}
+		if(x.getLabel() == classes[best]) correct++;
+	}
+
+	protected void report(int pid) {
+		double p = Math.max(1, points);
+		for (int k = 0; k < classes.length; k++) {
+			System.out.println("[multiclass] class " + name(k) + ": objective "
+					+ (regularizer[k] + hinge[k] / p) + ", one-vs-rest error "
+					+ errors[k] / p);
+		}
+		System.out.println("[multiclass] training accuracy " + correct / p);
+		for(int i=0;i<Network.size();i++) {
+			PegasosNode pn = (PegasosNode)Network.get(i);
+			WeightBank bank = ((BankProtocol)pn.getProtocol(pid)).getBank();
+			for (int k = 0; k < classes.length; k++)
+				pn.writeWeights("global_" + pn.getID() + "_class_" + name(k), bank.toWeights(k));
+		}
+	}
+
+	/** The label of class k, without decimals when it is an integer */
+	private static String name(int k) {
+		double l = classes[k];
+		return (l == Math.rint(l)) ? String.valueOf((long)l) : String.valueOf(l);
+	}
+}
@@ -0,0 +1,315 @@
+/*
+ * Peersim-Gadget : A Gadget protocol implementation in peersim based on the paper
+ * Chase Henzel, Haimonti Dutta
+ * GADGET SVM: A Gossip-bAseD sub-GradiEnT SVM Solver
+ *
+ * Copyright (C) 2012
+ * Deepak Nayak
+ * Columbia University, Computer Science MS'13
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package peersim.gossip;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import com.martiansoftware.jsap.*;
+
+/**
+ * Class MultiModelEvaluator
+ * Evaluates many models on a test set in one scan. The models, the
+ * global_&lt;id&gt;.dat files of a run, any model files or the models of a
+ * binary export, are stored in one feature-major matrix, the K weights of a
+ * feature next to each other as in {@link WeightBank}, so that every entry
+ * of a test row updates the margins of all models with one contiguous
+ * pass. The scan is done by {@link ScoringEngine}.
+ * <p>
+ * Besides the metrics of every model, as printed by {@link TestClassifier},
+ * it reports their spread across the nodes, how often the nodes disagree on
+ * a row, and the metrics of the averaged model, whose margin is the mean of
+ * the node margins.
+ */
+public class MultiModelEvaluator {
+
+	/** Margins of K models, per model and across models */
+	static class Scores extends ScoringEngine.Accumulator {
+
+		private final double[] m;
+
+		private final int K;
+
+		private final double[] margins;
+
+		long rows = 0;
+
+		final long[] errors;
+
+		final double[] hinge;
+
+		/** rows on which the models do not all predict the same class */
+		long disagreements = 0;
+
+		/** sum over rows of the standard deviation of the margins */
+		double marginSpread = 0.0;
+
+		/** errors and hinge loss of the mean of the models */
+		long meanErrors = 0;
+
+		double meanHinge = 0.0;
+
+		/** @param m feature-major weights, m[f * K + k] for model k */
+		Scores(double[] m, int K) {
+			this.m = m;
+			this.K = K;
+			this.margins = new double[K];
+			this.errors = new long[K];
+			this.hinge = new double[K];
+		}
+
+		public void row(double label, int[] dims, double[] vals, int nnz) {
+			Arrays.fill(margins, 0.0);
+			int features = m.length / K;
+			for (int i = 0; i < nnz; i++) {
+				int f = dims[i];
+				if(f >= features) continue;
+				double v = vals[i];
+				// f * K < m.length, see matrix()
+				int base = f * K;
+				for (int k = 0; k < K; k++) margins[k] += v * m[base + k];
+			}
+			int positive = 0;
+			double sum = 0.0;
+			for (int k = 0; k < K; k++) {
+				double ym = label * margins[k];
+				if(ym < 1) hinge[k] += 1 - ym;
+				if(ym < 0) errors[k]++;
+				if(margins[k] >= 0) positive++;
+				sum += margins[k];
+			}
+			if(positive != 0 && positive != K) disagreements++;
+			double mean = sum / K;
+			marginSpread += std(margins, mean);
+			double ym = label * mean;
+			if(ym < 1) meanHinge += 1 - ym;
+			if(ym < 0) meanErrors++;
+			rows++;
+		}
+
+		public void merge(ScoringEngine.Accumulator other) {
+			Scores s = (Scores)other;
+			rows += s.rows;
+			for (int k = 0; k < K; k++) {
+				errors[k] += s.errors[k];
+				hinge[k] += s.hinge[k];
+			}
+			disagreements += s.disagreements;
+			marginSpread += s.marginSpread;
+			meanErrors += s.meanErrors;
+			meanHinge += s.meanHinge;
+		}
+
+		public ScoringEngine.Accumulator fresh() {
+			return new Scores(m, K);
+		}
+	}
+
+	/** A model and the name it is reported under */
+	private static class Model {
+		final String name;
+		final Map<Integer, Double> w;
+		Model(String name, Map<Integer, Double> w) {
+			this.name = name;
+			this.w = w;
+		}
+	}
+
+	/**
+	 * The models named by path: all global_&lt;id&gt;.dat of a directory in
+	 * order of ID, all models of a binary export, or one text model file.
+	 */
+	private static void load(File path, List<Model> models) throws IOException {
+		if(path.isDirectory()) {
+			File[] files = path.listFiles(new FilenameFilter() {
+				public boolean accept(File dir, String name) {
+					return name.matches("global_\\d+\\.dat");
+				}
+			});
+			Arrays.sort(files, new Comparator<File>() {
+				public int compare(File a, File b) {
+					return Long.valueOf(id(a)).compareTo(id(b));
+				}
+			});
+			for (File f : files)
+				models.add(new Model(f.getName(), ScoringEngine.readTextModel(f)));
+		}
+		else if(ModelExporter.isExport(path)) {
+			for (Map.Entry<Long, ? extends Map<Integer, Double>> entry : ModelExporter.readAll(path).entrySet())
+				models.add(new Model("node " + entry.getKey(), entry.getValue()));
+		}
+		else models.add(new Model(path.getName(), ScoringEngine.readTextModel(path)));
+	}
+
+	private static long id(File global) {
+		String name = global.getName();
+		return Long.parseLong(name.substring("global_".length(), name.length() - ".dat".length()));
+	}
+
+	/**
+	 * The models as a feature-major matrix, m[f * K + k]
+	 * @throws IllegalArgumentException if the matrix is too large for a Java
+	 * array or for the heap
+	 */
+	static double[] matrix(List<Model> models) {
+		int K = models.size();
+		int features = 0;
+		for (Model model : models)
+			for (Integer f : model.w.keySet()) features = Math.max(features, f + 1);
+		long size = (long)features * K;
+		if(size > Integer.MAX_VALUE - 8)
+			throw new IllegalArgumentException(K + " models of " + features + " features need "
+					+ size + " weights, more than an array holds: evaluate fewer models at once,"
+					+ " or hash the features (--hashBits)");
+		if(size * 8 > Runtime.getRuntime().maxMemory())
+			throw new IllegalArgumentException(K + " models of " + features + " features need "
+					+ (size * 8 >> 20) + " MB, the heap is " + (Runtime.getRuntime().maxMemory() >> 20)
+					+ " MB: raise -Xmx (HEAP in evaluateModels.sh) or evaluate fewer models at once");
+		double[] m = new double[(int)size];
+		for (int k = 0; k < K; k++)
+			for (Map.Entry<Integer, Double> entry : models.get(k).w.entrySet())
+				if(entry.getKey() >= 0) m[entry.getKey() * K + k] = entry.getValue();
+		return m;
+	}
+
+	public static void main(String[] args) throws Exception {
+		JSAP jsap = new JSAP();
+		FlaggedOption opt1 = new FlaggedOption("data")
+									.setLongFlag("dataFile")
+									.setRequired(true)
+									.setStringParser(JSAP.STRING_PARSER);
+		jsap.registerParameter(opt1);
+		FlaggedOption opt2 = new FlaggedOption("lambda")
+									.setLongFlag("lambda")
+									.setRequired(false)
+									.setDefault("1.0")
+									.setStringParser(JSAP.DOUBLE_PARSER);
+		jsap.registerParameter(opt2);
+		// must match network.node.hashbits of the training run, 0 for none
+		FlaggedOption opt3 = new FlaggedOption("hashBits")
+									.setLongFlag("hashBits")
+									.setRequired(false)
+									.setDefault("0")
+									.setStringParser(JSAP.INTEGER_PARSER);
+		jsap.registerParameter(opt3);
+		FlaggedOption opt4 = new FlaggedOption("threads")
+									.setLongFlag("threads")
+									.setRequired(false)
+									.setDefault("" + Runtime.getRuntime().availableProcessors())
+									.setStringParser(JSAP.INTEGER_PARSER);
+		jsap.registerParameter(opt4);
+		// directories of global_<id>.dat files, binary exports or model files
+		UnflaggedOption opt5 = new UnflaggedOption("models")
+									.setRequired(true)
+									.setGreedy(true)
+									.setStringParser(JSAP.STRING_PARSER);
+		jsap.registerParameter(opt5);
+		JSAPResult config = jsap.parse(args);
+		if(!config.success()) {
+			for (java.util.Iterator<?> it = config.getErrorMessageIterator(); it.hasNext();)
+				System.err.println("Error: " + it.next());
+			System.err.println("Usage: MultiModelEvaluator " + jsap.getUsage());
+			System.exit(1);
+		}
+
+		String dataFile = config.getString("data");
+		double lambda = config.getDouble("lambda");
+		int hashBits = config.getInt("hashBits");
+		int threads = config.getInt("threads");
+		List<Model> models = new ArrayList<Model>();
+		for (String path : config.getStringArray("models"))
+			load(new File(path), models);
+		int K = models.size();
+		if(K == 0) {
+			System.err.println("No models found");
+			System.exit(1);
+		}
+		double[] m = null;
+		try {
+			m = matrix(models);
+		} catch (IllegalArgumentException e) {
+			System.err.println("Error: " + e.getMessage());
+			System.exit(1);
+		}
+		Scores scores = new Scores(m, K);
+		long start = System.nanoTime();
+		ScoringEngine.scan(new File(dataFile), threads,
+				(hashBits > 0) ? new FeatureHasher(hashBits) : null, scores);
+		double seconds = (System.nanoTime() - start) / 1e9;
+		long N = scores.rows;
+
+		// in test_objective or test_classify normValue is actually sqr of norm
+		double[] norm = new double[K];
+		for (int i = 0; i < m.length; i++) norm[i % K] += m[i] * m[i];
+		double[] mean = new double[m.length / K];
+		for (int i = 0; i < m.length; i++) mean[i / K] += m[i] / K;
+		double meanNorm = 0.0;
+		for (double v : mean) meanNorm += v * v;
+
+		System.out.println("Model\tNorm\tObjective\tLoss\tZero One Error");
+		double[] objective = new double[K];
+		double[] error = new double[K];
+		for (int k = 0; k < K; k++) {
+			objective[k] = norm[k] * lambda / 2.0 + scores.hinge[k] / N;
+			error[k] = 1.0 * scores.errors[k] / N;
+			System.out.println(models.get(k).name + "\t" + norm[k] + "\t" + objective[k] + "\t"
+					+ scores.hinge[k] / N + "\t(" + scores.errors[k] + "/" + N + ") " + error[k]);
+		}
+		System.out.println("mean model\t" + meanNorm + "\t"
+				+ (meanNorm * lambda / 2.0 + scores.meanHinge / N) + "\t" + scores.meanHinge / N
+				+ "\t(" + scores.meanErrors + "/" + N + ") " + (1.0 * scores.meanErrors / N));
+		System.out.println("Objective across nodes:\t" + spread(objective));
+		System.out.println("Zero One Error across nodes:\t" + spread(error));
+		System.out.println("Rows the nodes disagree on:\t(" + scores.disagreements + "/" + N + ") "
+				+ (1.0 * scores.disagreements / N));
+		System.out.println("Mean margin std. deviation:\t" + scores.marginSpread / N);
+		System.out.printf("Throughput:\t%d rows x %d models in %.3f s, %.0f rows/s on %d threads%n",
+				N, K, seconds, N / Math.max(seconds, 1e-9), threads);
+	}
+
+	/** min, max, mean and standard deviation of x */
+	private static String spread(double[] x) {
+		double min = Double.MAX_VALUE, max = -Double.MAX_VALUE, sum = 0.0;
+		for (double v : x) {
+			min = Math.min(min, v);
+			max = Math.max(max, v);
+			sum += v;
+		}
+		double mean = sum / x.length;
+		return "min " + min + " max " + max + " mean " + mean + " std " + std(x, mean);
+	}
+
+	/** Standard deviation of x around its mean, from the deviations */
+	static double std(double[] x, double mean) {
+		double sq = 0.0;
+		for (double v : x) sq += (v - mean) * (v - mean);
+		return Math.sqrt(sq / x.length);
+	}
+}
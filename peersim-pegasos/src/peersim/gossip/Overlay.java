@@ -0,0 +1,159 @@
+/*
+ * Peersim-Gadget : A Gadget protocol implementation in peersim based on the paper
+ * Chase Henzel, Haimonti Dutta
+ * GADGET SVM: A Gossip-bAseD sub-GradiEnT SVM Solver
+ *
+ * Copyright (C) 2012
+ * Deepak Nayak
+ * Columbia University, Computer Science MS'13
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package peersim.gossip;
+
+import peersim.core.Linkable;
+import peersim.core.Network;
+import peersim.core.Node;
+
+/**
+ * Class Overlay
+ * Snapshots of the overlay maintained by a {@link Linkable} protocol, indexed
+ * by node ID as everywhere else in the gossip package (optimalB is indexed the
+ * same way).
+ */
+public final class Overlay {
+
+	private Overlay() {}
+
+	/**
+	 * The neighbour IDs of every node as currently seen through its
+	 * {@link Linkable} protocol lid. Directed: j is in row i if i links to j.
+	 */
+	public static int[][] neighbours(int lid) {
+		int n = Network.size();
+		int[][] nbrs = new int[n][];
+		for(int i=0;i<n;i++) {
+			Node node = Network.get(i);
+			Linkable l = (Linkable) node.getProtocol(lid);
+			int[] row = new int[l.degree()];
+			for(int j=0;j<row.length;j++) {
+				row[j] = (int)l.getNeighbor(j).getID();
+			}
+			nbrs[(int)node.getID()] = row;
+		}
+		return nbrs;
+	}
+
+	/** Dense 0/1 adjacency matrix of the directed overlay */
+	public static int[][] adjacency(int lid) {
+		int n = Network.size();
+		int[][] adjM = new int[n][n];
+		int[][] nbrs = neighbours(lid);
+		for(int i=0;i<n;i++) {
+			for(int j=0;j<nbrs[i].length;j++) {
+				adjM[i][nbrs[i][j]] = 1;
+			}
+		}
+		return adjM;
+	}
+
+	/**
+	 * The undirected graph made of the reciprocal links only: i and j are
+	 * neighbours if each one is in the other's view. pushsum2 only reads the
+	 * nodes of its own view, so only these links can carry weight both ways.
+	 */
+	public static int[][] mutual(int[][] nbrs) {
+		int n = nbrs.length;
+		boolean[] mark = new boolean[n];
+		int[][] mut = new int[n][];
+		for(int i=0;i<n;i++) {
+			int[] tmp = new int[nbrs[i].length];
+			int d = 0;
+			for(int j : nbrs[i]) {
+				if(j == i || mark[j]) continue;
+				if(contains(nbrs[j], i)) {
+					mark[j] = true;
+					tmp[d++] = j;
+				}
+			}
+			for(int k=0;k<d;k++) mark[tmp[k]] = false;
+			mut[i] = java.util.Arrays.copyOf(tmp, d);
+		}
+		return mut;
+	}
+
+	/**
+	 * Hash of the overlay that does not depend on the order in which the
+	 * neighbours are stored, so that it only changes when links do.
+	 */
+	public static long fingerprint(int[][] nbrs) {
+		long h = 0xcbf29ce484222325L; // FNV-1a 64 bit
+		for(int i=0;i<nbrs.length;i++) {
+			int[] row = nbrs[i].clone();
+			java.util.Arrays.sort(row);
+			h = fnv(h, i);
+			h = fnv(h, row.length);
+			for(int j : row) h = fnv(h, j);
+		}
+		return h;
+	}
+
+	/**
+	 * Canonical SHA-256 digest of the overlay, as hex: the number of nodes
+	 * followed by the sorted neighbour IDs of every node. Used as a cache key,
+	 * where a 64 bit hash collision would silently return a wrong matrix.
+	 */
+	public static String digest(int[][] nbrs) {
+		try {
+			java.security.MessageDigest md = java.security.MessageDigest.getInstance("SHA-256");
+			java.nio.ByteBuffer buf = java.nio.ByteBuffer.allocate(4096);
+			buf.putInt(nbrs.length);
+			for(int i=0;i<nbrs.length;i++) {
+				int[] row = nbrs[i].clone();
+				java.util.Arrays.sort(row);
+				if(buf.remaining() < 4 * (row.length + 1)) {
+					buf.flip();
+					md.update(buf);
+					buf.clear();
+					if(buf.capacity() < 4 * (row.length + 1))
+						buf = java.nio.ByteBuffer.allocate(4 * (row.length + 1));
+				}
+				buf.putInt(row.length);
+				for(int j : row) buf.putInt(j);
+			}
+			buf.flip();
+			md.update(buf);
+			StringBuilder sb = new StringBuilder();
+			for(byte b : md.digest()) sb.append(String.format("%02x", b & 0xff));
+			return sb.toString();
+		}
+		catch (java.security.NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e); // every JVM has SHA-256
+		}
+	}
+
+	private static long fnv(long h, int v) {
+		for(int k=0;k<4;k++) {
+			h ^= (v >>> (8 * k)) & 0xff;
+			h *= 0x100000001b3L;
+		}
+		return h;
+	}
+
+	private static boolean contains(int[] row, int v) {
+		for(int x : row) if(x == v) return true;
+		return false;
+	}
+}
@@ -80,6 +80,70 @@ public class PegasosNode implements Node {
 	private static final String PAR_MAXITER = "maxiter";
 	private static final String PAR_EXAM_PER_ITER = "examperiter";
 
+	/**
+	 * New config option giving how unevenly the training data is spread over
+	 * the nodes: node i gets a share proportional to (i+1)^-skew. Defaults to
+	 * 0, every node getting the same number of points. Every node gets at
+	 * least one point.
+	 * @config
+	 */
+	private static final String PAR_SKEW = "skew";
+
+	/**
+	 * New config option: when given, the features of the shards are hashed
+	 * into 2^hashbits indices as they are written, see {@link FeatureHasher}.
+	 * Defaults to 0, no hashing.
+	 * @config
+	 */
+	private static final String PAR_HASHBITS = "hashbits";
+
+	/**
+	 * New config option: when given, the shards are kept on disk in this
+	 * directory and read through the cache of {@link ShardStore} instead of
+	 * staying on the heap.
+	 * @config
+	 */
+	private static final String PAR_STORE = "store";
+
+	/**
+	 * New config option giving the size in MB of the shard cache, defaults
+	 * to 64
+	 * @config
+	 */
+	private static final String PAR_CACHE = "cache";
+
+	/**
+	 * New config option giving how many shards of the next nodes are read
+	 * ahead, defaults to 0
+	 * @config
+	 */
+	private static final String PAR_PREFETCH = "prefetch";
+
+	/**
+	 * New config option: when given, the weight vectors of all nodes are kept
+	 * off the heap in a {@link SparseArena}, only the most recently used
+	 * being decoded on the heap
+	 * @config
+	 */
+	private static final String PAR_OFFHEAP = "offheap";
+
+	/**
+	 * New config option giving the page size in KB of the arena, defaults to
+	 * 1024
+	 * @config
+	 */
+	private static final String PAR_PAGE = "page";
+
+	/**
+	 * New config option giving how many weight vectors of the arena stay
+	 * decoded on the heap, defaults to 64
+	 * @config
+	 */
+	private static final String PAR_LIVE = "live";
+
+	/** Storage of the weight vectors when off the heap, null otherwise */
+	private static SparseArena arena = null;
+
 	/** used to generate unique IDs */
 	private static long counterID = -1;
 
@@ -121,14 +185,28 @@ public class PegasosNode implements Node {
 	private String resourcepath;
 
 	/**
-	 * The training dataset
+	 * The training dataset, null when it is kept in the {@link ShardStore};
+	 * read it with {@link #getShard()}
 	 */
 	public LabeledFeatureVector[] traindataset;
 
+	/** Number of points of the shard */
+	private int shardSize;
+
+	/** Changes whenever the points of the shard change */
+	private int shardVersion = 0;
+
+	/** Number of points dropped from the front of the shard so far */
+	private long shardOffset = 0;
+
 	/**
-	 * The primal weight vector
+	 * The primal weight vector, read it with {@link #getWtvector()}; null
+	 * when it is in the arena
 	 */
-	public PrimalSVMWeights wtvector;
+	private PrimalSVMWeights wtvector;
+
+	/** Slot of the weight vector in the arena, null when on the heap */
+	private SparseArena.Slot slot;
 	
 	public double weight;
 	
@@ -136,6 +214,10 @@ public class PegasosNode implements Node {
 	public int misclassified;
 	
 	private int numNodes;
+	
+	private double skew;
+	
+	private FeatureHasher hasher;
 
 	// ================ constructor and initialization =================
 	// =================================================================
@@ -163,6 +245,22 @@ public class PegasosNode implements Node {
 			protocol[i] = p; 
 		}
 		numNodes = Configuration.getInt(prefix + "." + PAR_SIZE, 20);
+		skew = Configuration.getDouble(prefix + "." + PAR_SKEW, 0.0);
+		if(skew != 0.0 && numNodes > 2000)
+			throw new IllegalParameterException(prefix + "." + PAR_SKEW,
+					"the 2000 training points cannot give all " + numNodes + " nodes a shard");
+		int hashbits = Configuration.getInt(prefix + "." + PAR_HASHBITS, 0);
+		hasher = (hashbits > 0) ? new FeatureHasher(hashbits) : null;
+		if(Configuration.contains(prefix + "." + PAR_STORE)) {
+			ShardStore.open(Configuration.getString(prefix + "." + PAR_STORE),
+					Configuration.getLong(prefix + "." + PAR_CACHE, ShardStore.CACHE_BYTES >> 20) << 20,
+					Configuration.getInt(prefix + "." + PAR_PREFETCH, 0));
+		}
+		if(Configuration.contains(prefix + "." + PAR_OFFHEAP)) {
+			arena = new SparseArena(Configuration.getInt(prefix + "." + PAR_PAGE,
+					SparseArena.PAGE_BYTES >> 10) << 10,
+					Configuration.getInt(prefix + "." + PAR_LIVE, SparseArena.LIVE));
+		}
 		System.out.println("Number of nodes is ####### "+numNodes);
 	}
 	
@@ -172,6 +270,20 @@ public class PegasosNode implements Node {
 		int numTrainingPoints = 2000/numNodes;
 	    int start = id1*numTrainingPoints+1;
 	    int end = start+numTrainingPoints-1;
+	    if(skew != 0.0) {
+	    	// one point each, the others in shares proportional to (i+1)^-skew,
+	    	// so node 0 holds the most; rounding the running sums keeps the
+	    	// shards contiguous and never empty
+	    	double total = 0.0, before = 0.0;
+	    	for(int i=0;i<numNodes;i++) {
+	    		double share = Math.pow(i + 1, -skew);
+	    		if(i < id1) before += share;
+	    		total += share;
+	    	}
+	    	int rest = 2000 - numNodes;
+	    	start = id1 + (int)Math.round(rest * before / total) + 1;
+	    	end = id1 + 1 + (int)Math.round(rest * (before + Math.pow(id1 + 1, -skew)) / total);
+	    }
 		String traindata = resourcepath + "/" + "train.dat";
 	    
 	    try {
@@ -191,6 +303,8 @@ public class PegasosNode implements Node {
 			BufferedWriter bw = new BufferedWriter(fw);		
 		    while ((line = in.readLine()) != null && in.getLineNumber() <= end) {
 		        if (in.getLineNumber() >= start) {	        	
+		        	if(hasher != null)
+		        		line = hasher.hashLine(line);
 					bw.write(line+"\n");
 		            //System.out.println(line);
 		        }
@@ -216,6 +330,7 @@ public class PegasosNode implements Node {
 		try { result=(PegasosNode)super.clone(); }
 		catch( CloneNotSupportedException e ) {} // never happens
 		result.protocol = new Protocol[protocol.length];
+		result.slot = null;
 		CommonState.setNode(result);
 		result.ID = nextID();
 		for(int i=0; i<protocol.length; ++i) {
@@ -246,13 +361,18 @@ public class PegasosNode implements Node {
 		try {
 			// used this deprecated method to make svmlight call happy.
 			result.traindataset = SVMLightInterface.getLabeledFeatureVectorsFromURL(new File(trainfilename).toURL(), 0);
-			result.wtvector = trainer.getWeightsfromFile(modelfilename);
+			result.setWtvector(trainer.getWeightsfromFile(modelfilename));
 			// try resetting here, so that simulation.cycle can be used and gossip
 			// happens in more balanced way
 			//result.wtvector.resetWeights();
 			weight = result.traindataset.length; 
+			result.shardSize = result.traindataset.length;
+			if(ShardStore.isOpen()) {
+				ShardStore.put(result.getID(), result.traindataset);
+				result.traindataset = null;
+			}
 			System.out.println("[init]: local weight norm at node ["
-                                                + result.getID() + "]: "+ result.wtvector.getL2Norm());
+                                                + result.getID() + "]: "+ result.getWtvector().getL2Norm());
 		}
 		catch (ParseException pe) {
 			pe.printStackTrace();
@@ -266,18 +386,15 @@ public class PegasosNode implements Node {
 	}
 
 	/**
-	 * This method is called at the end of simulation cycles. And it writes final 
-	 * global weights obtained to global_<id>.dat files in resourcepath
+	 * Writes the given weights, in svmlight format, to <name>.dat in
+	 * resourcepath
 	 */
-	public void writeGlobalWeights() {
-		String filename = resourcepath + "/" + "global_" + this.getID() + ".dat";
+	public void writeWeights(String name, Map<Integer, Double> map) {
+		String filename = resourcepath + "/" + name + ".dat";
 		BufferedWriter out = null;
 		try {
 			FileWriter fstream = new FileWriter(filename);
 			out = new BufferedWriter(fstream);
-			TreeMap<Integer, Double> map = this.wtvector.getWeights();
-			System.out.println("[finish]: global weight norm at node["
-                                                + this.getID() + "]: "+ this.wtvector.getL2Norm());
 			for (Map.Entry<Integer, Double> entry : map.entrySet()) {
 				String buf = entry.getKey().toString() + ":" + entry.getValue().toString() + " ";
 				out.write(buf);
@@ -296,6 +413,88 @@ public class PegasosNode implements Node {
 		}
 	}
 
+	/**
+	 * The training points of this node, from the heap or from the
+	 * {@link ShardStore}. Callers should not keep the array beyond the
+	 * current cycle, and use {@link #getShardVersion()} to tell whether
+	 * what they derived from it is still valid.
+	 */
+	public LabeledFeatureVector[] getShard() {
+		return (traindataset != null) ? traindataset : ShardStore.get(this);
+	}
+
+	/**
+	 * The weight vector. With the arena it may be paged out as soon as more
+	 * than network.node.live other vectors are used, so it is read again
+	 * rather than kept.
+	 */
+	public PrimalSVMWeights getWtvector() {
+		return (slot != null) ? slot.get() : wtvector;
+	}
+
+	/** Replaces the weight vector */
+	public void setWtvector(PrimalSVMWeights w) {
+		if(arena == null) wtvector = w;
+		else if(slot == null) slot = arena.newSlot(w);
+		else slot.set(w);
+	}
+
+	/** The arena holding the weight vectors, null when they are on the heap */
+	public static SparseArena getArena() {
+		return arena;
+	}
+
+	/** Number of training points, without reading them */
+	public int getShardSize() {
+		return (traindataset != null) ? traindataset.length : shardSize;
+	}
+
+	/** Changes whenever the training points change */
+	public int getShardVersion() {
+		return shardVersion;
+	}
+
+	/**
+	 * Number of points dropped from the front of the shard so far: point n
+	 * of the shard was point n + (new offset - old offset) of an earlier
+	 * version
+	 */
+	public long getShardOffset() {
+		return shardOffset;
+	}
+
+	/** The point as it is stored in the shard, i.e. hashed if hashing is on */
+	public LabeledFeatureVector toShard(LabeledFeatureVector x) {
+		return (hasher != null) ? hasher.hash(x) : x;
+	}
+
+	/**
+	 * Appends points, already passed through {@link #toShard}, to the end of
+	 * the shard. When window &gt; 0 only the last window points are kept.
+	 * The protocols see the new points at their next local step.
+	 */
+	public void append(LabeledFeatureVector[] rows, int window) {
+		LabeledFeatureVector[] old = getShard();
+		int size = old.length + rows.length;
+		int keep = (window > 0) ? Math.min(window, size) : size;
+		int from = size - keep;
+		LabeledFeatureVector[] data = new LabeledFeatureVector[keep];
+		for (int i = 0; i < keep; i++) {
+			int n = from + i;
+			data[i] = (n < old.length) ? old[n] : rows[n - old.length];
+		}
+		shardOffset += from;
+		shardSize = keep;
+		shardVersion++;
+		if(traindataset != null) traindataset = data;
+		else ShardStore.put(getID(), data);
+	}
+
+	/** Directory of the data and model files of this node */
+	public String getResourcePath() {
+		return resourcepath;
+	}
+
 	/** returns the next unique ID */
 	private long nextID() {
 
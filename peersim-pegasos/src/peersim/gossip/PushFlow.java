@@ -0,0 +1,231 @@
+/*
+ * Peersim-Gadget : A Gadget protocol implementation in peersim based on the paper
+ * Chase Henzel, Haimonti Dutta
+ * GADGET SVM: A Gossip-bAseD sub-GradiEnT SVM Solver
+ *
+ * Copyright (C) 2012
+ * Deepak Nayak
+ * Columbia University, Computer Science MS'13
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package peersim.gossip;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import peersim.core.Fallible;
+import peersim.core.Node;
+
+/**
+ * Class PushFlow
+ * Push-sum state of one node for the fault tolerant variant of push-sum
+ * (protocol.1.prot pushflow). Instead of handing mass over, which is lost
+ * with the node holding it, a node keeps its input and, per peer, the flow
+ * of value and weight it has sent to that peer; its estimate is its input
+ * minus the sum of its flows. A push adds half the estimate to the flow
+ * towards the peer, and the peer sets its own flow to the opposite, so the
+ * flows are antisymmetric and the estimates always sum to the inputs.
+ * <p>
+ * A message carries the whole flow, not an increment, so a lost message is
+ * repaired by the next one. When a peer dies its flow is dropped, which
+ * removes exactly the dead node's input: the estimates converge to the
+ * average of the inputs of the nodes still alive, instead of a biased
+ * average or no convergence at all.
+ */
+public class PushFlow implements Cloneable {
+
+	/** the value and weight of the node when the consensus phase started */
+	private TreeMap<Integer, Double> input;
+
+	private double inputWeight;
+
+	/** flows of value and weight sent to every peer */
+	private HashMap<Node, TreeMap<Integer, Double>> flows;
+
+	private HashMap<Node, Double> weightFlows;
+
+	/** running sums of the flows */
+	private TreeMap<Integer, Double> flowSum;
+
+	private double weightSum;
+
+	private boolean started;
+
+	public PushFlow() {
+		flows = new HashMap<Node, TreeMap<Integer, Double>>();
+		weightFlows = new HashMap<Node, Double>();
+		flowSum = new TreeMap<Integer, Double>();
+	}
+
+	public Object clone() {
+		PushFlow pf = null;
+		try { pf = (PushFlow)super.clone(); }
+		catch( CloneNotSupportedException e ) {} // never happens
+		pf.flows = new HashMap<Node, TreeMap<Integer, Double>>();
+		pf.weightFlows = new HashMap<Node, Double>();
+		pf.flowSum = new TreeMap<Integer, Double>();
+		pf.input = null;
+		pf.started = false;
+		return pf;
+	}
+
+	/** Writes the state, the peers by ID, see {@link CheckpointControl} */
+	void save(DataOutput out) throws IOException {
+		out.writeBoolean(started);
+		SparseVectorCodec.write(out, input, SparseVectorCodec.RAW);
+		out.writeDouble(inputWeight);
+		out.writeInt(flows.size());
+		for (Map.Entry<Node, TreeMap<Integer, Double>> e : flows.entrySet()) {
+			out.writeLong(e.getKey().getID());
+			SparseVectorCodec.write(out, e.getValue(), SparseVectorCodec.RAW);
+			out.writeDouble(weightFlows.get(e.getKey()));
+		}
+		SparseVectorCodec.write(out, flowSum, SparseVectorCodec.RAW);
+		out.writeDouble(weightSum);
+	}
+
+	/** Reads what {@link #save} wrote, nodes giving the nodes by ID */
+	void load(DataInput in, Map<Long, Node> nodes) throws IOException {
+		reset();
+		started = in.readBoolean();
+		input = SparseVectorCodec.read(in);
+		inputWeight = in.readDouble();
+		int n = in.readInt();
+		for (int i = 0; i < n; i++) {
+			Node peer = nodes.get(in.readLong());
+			flows.put(peer, SparseVectorCodec.read(in));
+			weightFlows.put(peer, in.readDouble());
+		}
+		flowSum = SparseVectorCodec.read(in);
+		weightSum = in.readDouble();
+	}
+
+	/** Forgets the flows of the previous consensus phase */
+	public void reset() {
+		flows.clear();
+		weightFlows.clear();
+		flowSum.clear();
+		weightSum = 0.0;
+		input = null;
+		started = false;
+	}
+
+	/**
+	 * Takes the current weights of the node as input of this consensus phase,
+	 * if not done yet. A node can be pushed to before its own first round.
+	 */
+	private void start(PegasosNode pn) {
+		if(!started) {
+			input = new TreeMap<Integer, Double>(pn.getWtvector().getWeights());
+			inputWeight = 1.0;
+			started = true;
+		}
+	}
+
+	/** The input of this phase, null if the node did not take part yet */
+	public TreeMap<Integer, Double> getInput() {
+		return input;
+	}
+
+	/** Drops the flows to dead peers, returns how many were dropped */
+	public int dropDead() {
+		int dropped = 0;
+		Iterator<Map.Entry<Node, TreeMap<Integer, Double>>> it = flows.entrySet().iterator();
+		while(it.hasNext()) {
+			Map.Entry<Node, TreeMap<Integer, Double>> e = it.next();
+			if(e.getKey().getFailState() != Fallible.DEAD) continue;
+			add(flowSum, e.getValue(), -1.0);
+			weightSum -= weightFlows.remove(e.getKey());
+			it.remove();
+			dropped++;
+		}
+		return dropped;
+	}
+
+	/**
+	 * Node pn, holding this state, pushes half of its estimate to peer. If
+	 * the message is lost only the flow of pn moves, the peer catches up with
+	 * the next message on this link. The estimates of both nodes are written
+	 * into their weight vectors. Returns the number of entries sent.
+	 */
+	public int push(PegasosNode pn, PegasosNode peer, PushFlow other, boolean lost) {
+		start(pn);
+		other.start(peer);
+		TreeMap<Integer, Double> half = new TreeMap<Integer, Double>(input);
+		add(half, flowSum, -1.0);
+		for (Map.Entry<Integer, Double> entry : half.entrySet()) {
+			entry.setValue(entry.getValue() / 2);
+		}
+		double halfWeight = (inputWeight - weightSum) / 2;
+
+		TreeMap<Integer, Double> f = flows.get(peer);
+		if(f == null) {
+			f = new TreeMap<Integer, Double>();
+			flows.put(peer, f);
+			weightFlows.put(peer, 0.0);
+		}
+		add(f, half, 1.0);
+		add(flowSum, half, 1.0);
+		weightFlows.put(peer, weightFlows.get(peer) + halfWeight);
+		weightSum += halfWeight;
+		estimate(pn);
+		if(lost) return f.size() + 1;
+
+		// the peer sets its flow to the opposite of ours
+		TreeMap<Integer, Double> g = other.flows.get(pn);
+		if(g != null) {
+			add(other.flowSum, g, -1.0);
+			other.weightSum -= other.weightFlows.get(pn);
+		}
+		g = new TreeMap<Integer, Double>();
+		add(g, f, -1.0);
+		other.flows.put(pn, g);
+		other.weightFlows.put(pn, -weightFlows.get(peer));
+		add(other.flowSum, g, 1.0);
+		other.weightSum -= weightFlows.get(peer);
+		other.estimate(peer);
+		return f.size() + 1;
+	}
+
+	/**
+	 * Writes the estimate input - flows of this node into its weight vector.
+	 * The weight of a node can get close to zero right after flows to dead
+	 * peers were dropped, the vector is then kept until it recovers.
+	 */
+	public void estimate(PegasosNode pn) {
+		double w = inputWeight - weightSum;
+		if(!started || w <= 1e-12) return;
+		TreeMap<Integer, Double> est = new TreeMap<Integer, Double>(input);
+		add(est, flowSum, -1.0);
+		for (Map.Entry<Integer, Double> entry : est.entrySet()) {
+			entry.setValue(entry.getValue() / w);
+		}
+		pn.getWtvector().setFeatures(est);
+	}
+
+	/** to += scale * from */
+	private static void add(TreeMap<Integer, Double> to, Map<Integer, Double> from, double scale) {
+		for (Map.Entry<Integer, Double> entry : from.entrySet()) {
+			Double v = to.get(entry.getKey());
+			to.put(entry.getKey(), (v == null ? 0.0 : v) + scale * entry.getValue());
+		}
+	}
+}
@@ -19,6 +19,7 @@
 package peersim.gossip;
 
 import java.util.Iterator;
+import java.util.Map;
 import java.util.TreeMap;
 
 import peersim.cdsim.CDProtocol;
@@ -73,6 +74,12 @@ public class PushSumObserver implements Control {
     
     private String protocol;
 
+    /** Protocol identifier of GADGET, -1 if not configured */
+    private final int pid;
+
+    /** Rounds since the current consensus phase started */
+    private int rounds = 0;
+
 
     // /////////////////////////////////////////////////////////////////////
     // Constructor
@@ -85,6 +92,7 @@ public class PushSumObserver implements Control {
         this.name = name;
         accuracy = Configuration.getDouble(name + "." + PAR_ACCURACY, -1);
         protocol = Configuration.getString(name + "." + "prot", "pushsum1");
+        pid = Configuration.getPid(name + "." + PAR_PROT, -1);
         
     }
 
@@ -114,11 +122,13 @@ public class PushSumObserver implements Control {
             //SingleValue protocol = (SingleValue) Network.get(i)
               //      .getProtocol(pid);
         	Node n = Network.get(i);
+        	// failed nodes do not take part in the consensus any more
+        	if(!n.isUp()) continue;
         	PegasosNode pn1 = (PegasosNode) n;
         	/*if(i==1) {
         		System.out.println(pn1.wtvector.getWeights().firstEntry().getValue()+"...........");
         	}*/
-    		Iterator<Integer> p_it = pn1.wtvector.getWeights().keySet().iterator();
+    		Iterator<Integer> p_it = pn1.getWtvector().getWeights().keySet().iterator();
     		//str += pn1.wtvector.getL2Norm() +"--";
         	int ct=0;
     		while (p_it.hasNext()) {
@@ -130,9 +140,9 @@ public class PushSumObserver implements Control {
     				is1.put(index,new IncrementalStats());   				
     			}
     			if(protocol.equals("pushsum2"))
-    				is1.get(index).add(pn1.wtvector.getWeights().get(index)/pn1.weight);
+    				is1.get(index).add(pn1.getWtvector().getWeights().get(index)/pn1.weight);
     			else
-    				is1.get(index).add(pn1.wtvector.getWeights().get(index));
+    				is1.get(index).add(pn1.getWtvector().getWeights().get(index));
     				
 //    			is1.get(index).add(pn1.weight);
     			
@@ -166,9 +176,13 @@ public class PushSumObserver implements Control {
         	retVal = retVal && (is1.get(index).getStD() <= accuracy);
         }
         System.out.println(sum+"...................");
+        rounds++;
              
         if(retVal) {
         	System.out.println("Push-Sum converged...###########################!");
+        	if(protocol.equals("pushflow") && pid >= 0)
+        		reportFlow();
+        	rounds = 0;
         	GadgetProtocol4.pushsumobserverflag = true;
         	return GadgetProtocol4.end;
         }
@@ -177,4 +191,41 @@ public class PushSumObserver implements Control {
         	return false;
         }
     }
+
+    /**
+     * Prints the rounds push-flow needed and how far its estimate is from the
+     * average of the inputs of the nodes still alive, the value it must
+     * converge to whatever nodes failed during the phase.
+     */
+    private void reportFlow() {
+        TreeMap<Integer, Double> avg = new TreeMap<Integer, Double>();
+        TreeMap<Integer, Double> est = new TreeMap<Integer, Double>();
+        int alive = 0;
+        for (int i = 0; i < Network.size(); i++) {
+            Node n = Network.get(i);
+            if(!n.isUp()) continue;
+            TreeMap<Integer, Double> input = ((GadgetProtocol4) n.getProtocol(pid)).getFlow().getInput();
+            if(input == null) continue;
+            alive++;
+            add(avg, input);
+            add(est, ((PegasosNode) n).getWtvector().getWeights());
+        }
+        if(alive == 0) return;
+        double err = 0, norm = 0;
+        for (Map.Entry<Integer, Double> entry : avg.entrySet()) {
+            Double e = est.get(entry.getKey());
+            double d = ((e == null) ? 0.0 : e) - entry.getValue();
+            err += d * d;
+            norm += entry.getValue() * entry.getValue();
+        }
+        System.out.println("[pushflow] converged after " + rounds + " rounds, " + alive
+                + " nodes alive, relative error " + Math.sqrt(err / Math.max(norm, Double.MIN_NORMAL)));
+    }
+
+    private static void add(TreeMap<Integer, Double> to, Map<Integer, Double> from) {
+        for (Map.Entry<Integer, Double> entry : from.entrySet()) {
+            Double v = to.get(entry.getKey());
+            to.put(entry.getKey(), ((v == null) ? 0.0 : v) + entry.getValue());
+        }
+    }
 }
@@ -0,0 +1,154 @@
+/*
+ * Peersim-Gadget : A Gadget protocol implementation in peersim based on the paper
+ * Chase Henzel, Haimonti Dutta
+ * GADGET SVM: A Gossip-bAseD sub-GradiEnT SVM Solver
+ *
+ * Copyright (C) 2012
+ * Deepak Nayak
+ * Columbia University, Computer Science MS'13
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package peersim.gossip;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import jnipegasos.PrimalSVMWeights;
+
+import peersim.config.Configuration;
+import peersim.core.*;
+import peersim.cdsim.*;
+
+/**
+ * Class ReduceProtocol
+ * Base of the exact aggregation baselines of GADGET. Every iteration takes a
+ * fixed number of cycles: one for the local step (the same
+ * {@link LocalSolver} step as {@link GadgetProtocol4}), steps() cycles
+ * in which the subclass sums the weights of all nodes with its communication
+ * pattern, and one in which every node divides the sum by the network size,
+ * projects it and adds it to its running sum. After protocol.1.iter
+ * iterations the nodes hold the average of their iterates, as in GADGET.
+ * The phase of every node is derived from the cycle number, so no node
+ * needs to coordinate with the others.
+ * <p>
+ * The cycles, bytes and objective are reported after every iteration through
+ * {@link RunStats}, as for GADGET.
+ */
+public abstract class ReduceProtocol implements CDProtocol {
+	/**
+	 * Config option to get the learning parameter lambda
+	 * @config
+	 */
+	private static final String PAR_LAMBDA = "lambda";
+	/**
+	 * Config option to get the number of iterations
+	 * @config
+	 */
+	private static final String PAR_ITERATION = "iter";
+
+	/** Learning parameter, as for GADGET */
+	protected double lambda;
+	/** Number of iterations (T in gadget) */
+	protected int T;
+
+	private LocalSolver solver;
+
+	private PrimalSVMWeights primalSVMWeights;
+
+	private boolean done = false;
+
+	public ReduceProtocol(String prefix) {
+		lambda = Configuration.getDouble(prefix + "." + PAR_LAMBDA, 0.01);
+		T = Configuration.getInt(prefix + "." + PAR_ITERATION, 100);
+		solver = LocalSolver.create(prefix);
+		primalSVMWeights = new PrimalSVMWeights(new TreeMap<Integer, Double>());
+	}
+
+	public Object clone() {
+		ReduceProtocol rp = null;
+		try { rp = (ReduceProtocol)super.clone(); }
+		catch( CloneNotSupportedException e ) {} // never happens
+		rp.solver = (LocalSolver)solver.clone();
+		rp.primalSVMWeights = new PrimalSVMWeights(new TreeMap<Integer, Double>());
+		return rp;
+	}
+
+	/** Name used in the reports */
+	protected abstract String getName();
+
+	/** Number of communication cycles needed to sum over n nodes */
+	protected abstract int steps(int n);
+
+	/**
+	 * Communication step of the given node, at the end of the last step every
+	 * node must hold the sum of the weights of all nodes.
+	 */
+	protected abstract void communicate(int index, int step, int n);
+
+	public void nextCycle(Node node, int pid) {
+		PegasosNode pn = (PegasosNode)node;
+		int n = Network.size();
+		int steps = steps(n);
+		int period = steps + 2;
+		int time = CommonState.getIntTime();
+		int t = time / period + 1;
+		int phase = time % period;
+		if(t > T) {
+			if(!done) {
+				for (Map.Entry<Integer, Double> entry : primalSVMWeights.getWeights().entrySet()) {
+					pn.getWtvector().addFeature(entry.getKey(), entry.getValue() / T);
+				}
+				done = true;
+			}
+			return;
+		}
+		if(phase == 0) {
+			solver.step(pn, lambda, t);
+		}
+		else if(phase <= steps) {
+			communicate(node.getIndex(), phase - 1, n);
+		}
+		else {
+			for (Map.Entry<Integer, Double> entry : pn.getWtvector().getWeights().entrySet()) {
+				entry.setValue(entry.getValue() / n);
+			}
+			GadgetProtocol4.project(pn, lambda, primalSVMWeights);
+			if(node.getIndex() == n - 1)
+				RunStats.report(getName(), t, lambda);
+		}
+	}
+
+	/** The weights of the node at the given network index */
+	protected static TreeMap<Integer, Double> weights(int index) {
+		return ((PegasosNode)Network.get(index)).getWtvector().getWeights();
+	}
+
+	/** Adds the entries of from into to */
+	protected static void add(Map<Integer, Double> from, TreeMap<Integer, Double> to) {
+		for (Map.Entry<Integer, Double> entry : from.entrySet()) {
+			Double v = to.get(entry.getKey());
+			to.put(entry.getKey(), (v == null) ? entry.getValue() : v + entry.getValue());
+		}
+		RunStats.addEntries(from.size());
+	}
+
+	/** Replaces the entries of to with the ones of from */
+	protected static void copy(Map<Integer, Double> from, Map<Integer, Double> to) {
+		to.clear();
+		to.putAll(from);
+		RunStats.addEntries(from.size());
+	}
+}
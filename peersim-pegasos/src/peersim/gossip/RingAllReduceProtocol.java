@@ -0,0 +1,69 @@
+/*
+ * Peersim-Gadget : A Gadget protocol implementation in peersim based on the paper
+ * Chase Henzel, Haimonti Dutta
+ * GADGET SVM: A Gossip-bAseD sub-GradiEnT SVM Solver
+ *
+ * Copyright (C) 2012
+ * Deepak Nayak
+ * Columbia University, Computer Science MS'13
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package peersim.gossip;
+
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Class RingAllReduceProtocol
+ * Exact aggregation baseline: ring all-reduce over the network indices. The
+ * feature space is cut into n chunks; in n-1 reduce-scatter steps node i sends
+ * chunk i-s to node i+1, which adds it to its own, so that node i ends up with
+ * the complete sum of chunk i+1; in n-1 all-gather steps the complete chunks
+ * travel once more around the ring. Every node sends 2(n-1)/n of a model per
+ * iteration whatever the network size. The overlay is not used.
+ */
+public class RingAllReduceProtocol extends ReduceProtocol {
+
+	/** chunk c holds the features in [c*width, (c+1)*width) */
+	private static int width = 0;
+
+	public RingAllReduceProtocol(String prefix) {
+		super(prefix);
+	}
+
+	protected String getName() { return "ring"; }
+
+	protected int steps(int n) { return 2 * (n - 1); }
+
+	protected void communicate(int i, int step, int n) {
+		if(width == 0)
+			width = WeightBank.maxFeature() / n + 1;
+		int next = (i + 1) % n;
+		if(step < n - 1) {
+			int c = ((i - step) % n + n) % n;
+			add(chunk(weights(i), c, n), weights(next));
+		}
+		else {
+			int c = ((i + 1 - (step - n + 1)) % n + n) % n;
+			copy(chunk(weights(i), c, n), chunk(weights(next), c, n));
+		}
+	}
+
+	private static SortedMap<Integer, Double> chunk(TreeMap<Integer, Double> w, int c, int n) {
+		if(c == n - 1) return w.tailMap(c * width);
+		return w.subMap(c * width, (c + 1) * width);
+	}
+}
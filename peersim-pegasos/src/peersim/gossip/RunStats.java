@@ -0,0 +1,98 @@
+/*
+ * Peersim-Gadget : A Gadget protocol implementation in peersim based on the paper
+ * Chase Henzel, Haimonti Dutta
+ * GADGET SVM: A Gossip-bAseD sub-GradiEnT SVM Solver
+ *
+ * Copyright (C) 2012
+ * Deepak Nayak
+ * Columbia University, Computer Science MS'13
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package peersim.gossip;
+
+import java.util.TreeMap;
+
+import jnisvmlight.LabeledFeatureVector;
+import peersim.core.CommonState;
+import peersim.core.Network;
+
+/**
+ * Class RunStats
+ * Metrics shared by all training protocols, so that GADGET and the exact
+ * aggregation baselines report the same figures: simulated cycles, bytes sent
+ * between nodes and objective value after every iteration.
+ */
+public final class RunStats {
+
+	/** bytes of one sparse weight entry on the wire: int index and double value */
+	public static final int ENTRY_BYTES = 12;
+
+	/** bytes sent between nodes so far */
+	public static long bytes = 0;
+
+	private RunStats() {}
+
+	/** Accounts for entries weight entries sent from one node to another */
+	public static void addEntries(long entries) {
+		bytes += entries * ENTRY_BYTES;
+	}
+
+	/** Accounts for raw bytes sent from one node to another */
+	public static void addBytes(long b) {
+		bytes += b;
+	}
+
+	/**
+	 * Objective of the models the nodes currently hold,
+	 * lambda/2 * mean_i ||w_i||^2 + 1/N * sum_i sum_(x,y) in shard i max(0, 1 - y*<w_i,x>).
+	 * Every model is only evaluated on its own shard, so the cost is one pass
+	 * over the data; once the nodes agree it is the objective of their common
+	 * model.
+	 */
+	public static double objective(double lambda) {
+		double norms = 0.0;
+		double loss = 0.0;
+		long points = 0;
+		int nodes = 0;
+		for(int i=0;i<Network.size();i++) {
+			PegasosNode pn = (PegasosNode)Network.get(i);
+			if(!pn.isUp()) continue;
+			nodes++;
+			double norm = pn.getWtvector().getL2Norm();
+			norms += norm * norm;
+			TreeMap<Integer, Double> w = pn.getWtvector().getWeights();
+			for(LabeledFeatureVector x : pn.getShard()) {
+				double dotprod = 0.0;
+				for(int k=0;k<x.size();k++) {
+					Double wval = w.get(x.getDimAt(k));
+					if(wval != null) dotprod += wval * x.getValueAt(k);
+				}
+				loss += Math.max(0.0, 1.0 - x.getLabel() * dotprod);
+				points++;
+			}
+		}
+		if(nodes == 0) return 0.0;
+		return lambda / 2.0 * norms / nodes + ((points == 0) ? 0.0 : loss / points);
+	}
+
+	/** Prints the metrics of the given protocol after the given iteration */
+	public static void report(String tag, int iteration, double lambda) {
+		System.out.println("[" + tag + "] iteration " + iteration
+				+ ": cycles " + (CommonState.getTime() + 1)
+				+ ", bytes " + bytes
+				+ ", objective " + objective(lambda));
+	}
+}
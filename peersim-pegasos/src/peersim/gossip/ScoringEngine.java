@@ -0,0 +1,453 @@
+/*
+ * Peersim-Gadget : A Gadget protocol implementation in peersim based on the paper
+ * Chase Henzel, Haimonti Dutta
+ * GADGET SVM: A Gossip-bAseD sub-GradiEnT SVM Solver
+ *
+ * Copyright (C) 2012
+ * Deepak Nayak
+ * Columbia University, Computer Science MS'13
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package peersim.gossip;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Class ScoringEngine
+ * Scores a test set against a linear model on several threads. The test
+ * set, svmlight text or the binary layout of {@link ShardStore} (files
+ * ending in .bin), is memory mapped and cut into chunks at row boundaries;
+ * every chunk is parsed in place, without a String per row, and its rows
+ * handed to its own {@link Accumulator}, a clone of the one given to
+ * {@link #scan}, so the threads share nothing. The model is a dense array
+ * indexed by feature, a lookup per entry instead of a TreeMap search.
+ * <p>
+ * With a {@link FeatureHasher} the features are hashed while parsing, as
+ * the shards were for training.
+ */
+public final class ScoringEngine {
+
+	/** Largest text chunk mapped at once */
+	private static final long MAX_CHUNK = 256L << 20;
+
+	/** Chunks per thread, so that uneven chunks still keep all threads busy */
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	/** 10^0 .. 10^22, exact as doubles */
+	private static final double[] POW10 = new double[23];
+
+	static {
+		POW10[0] = 1.0;
+		for (int i = 1; i < POW10.length; i++) POW10[i] = POW10[i - 1] * 10;
+	}
+
+	private ScoringEngine() {}
+
+	/**
+	 * Receives the rows of one chunk. The arrays are reused between rows and
+	 * hold nnz entries.
+	 */
+	public static abstract class Accumulator implements Cloneable {
+
+		public abstract void row(double label, int[] dims, double[] vals, int nnz);
+
+		/** Adds the results of another chunk */
+		public abstract void merge(Accumulator other);
+
+		/** An empty accumulator of the same kind, for another chunk */
+		public abstract Accumulator fresh();
+	}
+
+	/** Hinge loss, zero-one errors and rows of one model */
+	public static class Scores extends Accumulator {
+
+		private final double[] w;
+
+		public long rows = 0;
+
+		public long errors = 0;
+
+		public double hinge = 0.0;
+
+		/** @param w dense weights, w[f] for feature f */
+		public Scores(double[] w) {
+			this.w = w;
+		}
+
+		public void row(double label, int[] dims, double[] vals, int nnz) {
+			double dot = 0.0;
+			for (int k = 0; k < nnz; k++) {
+				int f = dims[k];
+				if(f < w.length) dot += vals[k] * w[f];
+			}
+			double m = label * dot;
+			if(m < 1) hinge += 1 - m;
+			if(m < 0) errors++;
+			rows++;
+		}
+
+		public void merge(Accumulator other) {
+			Scores s = (Scores)other;
+			rows += s.rows;
+			errors += s.errors;
+			hinge += s.hinge;
+		}
+
+		public Accumulator fresh() {
+			return new Scores(w);
+		}
+	}
+
+	/** w as a dense array indexed by feature */
+	public static double[] dense(Map<Integer, Double> w) {
+		int max = -1;
+		for (Integer f : w.keySet()) max = Math.max(max, f);
+		double[] d = new double[max + 1];
+		for (Map.Entry<Integer, Double> entry : w.entrySet())
+			if(entry.getKey() >= 0) d[entry.getKey()] = entry.getValue();
+		return d;
+	}
+
+	/** Reads a model file of f:v pairs, as written by PegasosNode */
+	public static TreeMap<Integer, Double> readTextModel(File file) throws IOException {
+		final TreeMap<Integer, Double> w = new TreeMap<Integer, Double>();
+		// the pairs of a model file parse like the features of a row
+		scan(file, 1, null, new Accumulator() {
+			public void row(double label, int[] dims, double[] vals, int nnz) {
+				for (int k = 0; k < nnz; k++) w.put(dims[k], vals[k]);
+			}
+			public void merge(Accumulator other) {}
+			public Accumulator fresh() { return this; }
+		}, true);
+		return w;
+	}
+
+	/**
+	 * Hands every row of data to clones of acc on the given number of
+	 * threads, and merges their results into acc.
+	 */
+	public static void scan(File data, int threads, FeatureHasher hasher, Accumulator acc)
+			throws IOException {
+		scan(data, threads, hasher, acc, false);
+	}
+
+	/** noLabel: the lines are only f:v pairs, as in a model file */
+	private static void scan(File data, int threads, final FeatureHasher hasher,
+			Accumulator acc, final boolean noLabel) throws IOException {
+		final boolean binary = data.getName().endsWith(".bin");
+		RandomAccessFile raf = new RandomAccessFile(data, "r");
+		try {
+			final FileChannel channel = raf.getChannel();
+			threads = Math.max(1, threads);
+			long[] bounds = binary ? binaryChunks(channel, threads * CHUNKS_PER_THREAD)
+					: textChunks(channel, threads * CHUNKS_PER_THREAD);
+			List<Callable<Accumulator>> tasks = new ArrayList<Callable<Accumulator>>();
+			for (int c = 0; c + 1 < bounds.length; c++) {
+				final long start = bounds[c];
+				final long end = bounds[c + 1];
+				if(end <= start) continue;
+				final Accumulator part = acc.fresh();
+				tasks.add(new Callable<Accumulator>() {
+					public Accumulator call() throws IOException {
+						MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+						if(binary) parseBinary(buf, hasher, part);
+						else parseText(buf, hasher, part, noLabel);
+						return part;
+					}
+				});
+			}
+			if(threads == 1) {
+				for (Callable<Accumulator> task : tasks) {
+					try { merge(acc, task.call()); }
+					catch (IOException e) { throw e; }
+					catch (Exception e) { throw new RuntimeException(e); }
+				}
+				return;
+			}
+			ExecutorService pool = Executors.newFixedThreadPool(threads);
+			try {
+				for (Future<Accumulator> f : pool.invokeAll(tasks))
+					merge(acc, f.get());
+			}
+			catch (InterruptedException e) {
+				throw new IOException("scan interrupted");
+			}
+			catch (ExecutionException e) {
+				if(e.getCause() instanceof IOException) throw (IOException)e.getCause();
+				throw new RuntimeException(e.getCause());
+			}
+			finally {
+				pool.shutdown();
+			}
+		}
+		finally {
+			raf.close();
+		}
+	}
+
+	private static void merge(Accumulator acc, Accumulator part) {
+		if(part != acc) acc.merge(part);
+	}
+
+	/** Chunk boundaries of a text file, each just after a newline */
+	private static long[] textChunks(FileChannel channel, int chunks) throws IOException {
+		long size = channel.size();
+		int n = (int)Math.max(chunks, size / MAX_CHUNK + 1);
+		long[] bounds = new long[n + 1];
+		ByteBuffer probe = ByteBuffer.allocate(4096);
+		for (int c = 1; c < n; c++) {
+			long pos = Math.max(bounds[c - 1], size * c / n);
+			// move to just after the next newline
+			search:
+			while(pos < size) {
+				probe.clear();
+				int read = channel.read(probe, pos);
+				if(read <= 0) { pos = size; break; }
+				for (int i = 0; i < read; i++) {
+					if(probe.get(i) == '\n') { pos += i + 1; break search; }
+				}
+				pos += read;
+			}
+			bounds[c] = Math.min(pos, size);
+		}
+		bounds[n] = size;
+		return bounds;
+	}
+
+	/**
+	 * Chunk boundaries of a binary file, found by walking the row headers:
+	 * label, nnz, nnz indices, nnz values
+	 */
+	private static long[] binaryChunks(FileChannel channel, int chunks) throws IOException {
+		long size = channel.size();
+		if(size < 4) return new long[] { 0, 0 };
+		ByteBuffer head = ByteBuffer.allocate(4);
+		channel.read(head, 0);
+		int rows = head.getInt(0);
+		int per = Math.max(1, (rows + chunks - 1) / chunks);
+		List<Long> bounds = new ArrayList<Long>();
+		bounds.add(4L);
+		long pos = 4;
+		MappedByteBuffer window = null;
+		long windowStart = 0;
+		for (int n = 0; n < rows; n++) {
+			if(window == null || pos + 12 > windowStart + window.capacity()) {
+				windowStart = pos;
+				window = channel.map(FileChannel.MapMode.READ_ONLY, pos,
+						Math.min(size - pos, MAX_CHUNK));
+			}
+			int nnz = window.getInt((int)(pos - windowStart) + 8);
+			pos += 12 + 12L * nnz;
+			if((n + 1) % per == 0 || n + 1 == rows) bounds.add(pos);
+		}
+		long[] b = new long[bounds.size()];
+		for (int i = 0; i < b.length; i++) b[i] = bounds.get(i);
+		return b;
+	}
+
+	private static void parseBinary(ByteBuffer buf, FeatureHasher hasher, Accumulator acc) {
+		int[] dims = new int[16];
+		double[] vals = new double[16];
+		while(buf.remaining() > 0) {
+			double label = buf.getDouble();
+			int nnz = buf.getInt();
+			if(nnz > dims.length) {
+				dims = new int[Math.max(nnz, 2 * dims.length)];
+				vals = new double[dims.length];
+			}
+			for (int k = 0; k < nnz; k++) dims[k] = buf.getInt();
+			for (int k = 0; k < nnz; k++) vals[k] = buf.getDouble();
+			if(hasher != null) {
+				for (int k = 0; k < nnz; k++) {
+					vals[k] *= hasher.sign(dims[k]);
+					dims[k] = hasher.index(dims[k]);
+				}
+			}
+			acc.row(label, dims, vals, nnz);
+		}
+	}
+
+	/**
+	 * Parses svmlight lines, label f:v ... # comment, in place. Tokens that
+	 * are not an integer feature with a value (qid:) are skipped.
+	 */
+	private static void parseText(ByteBuffer buf, FeatureHasher hasher, Accumulator acc,
+			boolean noLabel) {
+		int[] dims = new int[16];
+		double[] vals = new double[16];
+		int pos = buf.position();
+		int end = buf.limit();
+		while(pos < end) {
+			int eol = pos;
+			while(eol < end && buf.get(eol) != '\n') eol++;
+			int lineEnd = pos;
+			while(lineEnd < eol && buf.get(lineEnd) != '#') lineEnd++;
+			boolean labelled = noLabel;
+			double label = 0.0;
+			int nnz = 0;
+			int s = pos;
+			while(true) {
+				while(s < lineEnd && isSpace(buf.get(s))) s++;
+				if(s >= lineEnd) break;
+				int e = s;
+				while(e < lineEnd && !isSpace(buf.get(e))) e++;
+				if(!labelled) {
+					label = parseDouble(buf, s, e);
+					labelled = true;
+				}
+				else {
+					int colon = s;
+					int f = 0;
+					while(colon < e && buf.get(colon) >= '0' && buf.get(colon) <= '9')
+						f = 10 * f + (buf.get(colon++) - '0');
+					if(colon > s && colon < e && buf.get(colon) == ':') {
+						if(nnz == dims.length) {
+							int[] nd = new int[2 * nnz];
+							double[] nv = new double[2 * nnz];
+							System.arraycopy(dims, 0, nd, 0, nnz);
+							System.arraycopy(vals, 0, nv, 0, nnz);
+							dims = nd;
+							vals = nv;
+						}
+						double v = parseDouble(buf, colon + 1, e);
+						if(hasher != null) {
+							v *= hasher.sign(f);
+							f = hasher.index(f);
+						}
+						dims[nnz] = f;
+						vals[nnz] = v;
+						nnz++;
+					}
+				}
+				s = e;
+			}
+			if(labelled && (nnz > 0 || !noLabel)) acc.row(label, dims, vals, nnz);
+			pos = eol + 1;
+		}
+	}
+
+	private static boolean isSpace(byte b) {
+		return b == ' ' || b == '\t' || b == '\r';
+	}
+
+	/**
+	 * Parses the decimal number in buf[s, e). Numbers of at most 15
+	 * significant digits and a power of ten within 10^22 are computed
+	 * exactly with one rounding, as Double.parseDouble would; the others go
+	 * through Double.parseDouble.
+	 */
+	static double parseDouble(ByteBuffer buf, int s, int e) {
+		int i = s;
+		boolean negative = false;
+		if(i < e && (buf.get(i) == '-' || buf.get(i) == '+')) negative = buf.get(i++) == '-';
+		long mantissa = 0;
+		int digits = 0, exp = 0;
+		boolean any = false, dot = false;
+		for (; i < e; i++) {
+			byte b = buf.get(i);
+			if(b >= '0' && b <= '9') {
+				any = true;
+				if(digits > 0 || b != '0') {
+					if(digits < 18) mantissa = 10 * mantissa + (b - '0');
+					else if(!dot) exp++;
+					digits++;
+				}
+				if(dot && digits <= 18) exp--;
+			}
+			else if(b == '.' && !dot) dot = true;
+			else break;
+		}
+		if(any && i < e && (buf.get(i) == 'e' || buf.get(i) == 'E')) {
+			int j = i + 1;
+			boolean eneg = false;
+			if(j < e && (buf.get(j) == '-' || buf.get(j) == '+')) eneg = buf.get(j++) == '-';
+			int x = 0;
+			boolean expDigits = false;
+			while(j < e && buf.get(j) >= '0' && buf.get(j) <= '9' && x < 100000) {
+				x = 10 * x + (buf.get(j++) - '0');
+				expDigits = true;
+			}
+			if(expDigits) {
+				exp += eneg ? -x : x;
+				i = j;
+			}
+		}
+		if(any && i == e && digits <= 15 && Math.abs(exp) <= 22) {
+			double v = (exp >= 0) ? mantissa * POW10[exp] : mantissa / POW10[-exp];
+			return negative ? -v : v;
+		}
+		byte[] bytes = new byte[e - s];
+		for (int k = 0; k < bytes.length; k++) bytes[k] = buf.get(s + k);
+		return Double.parseDouble(new String(bytes));
+	}
+
+	/**
+	 * Writes a text test set in the binary layout, which is read without
+	 * parsing. The features are written as they are, not hashed.
+	 */
+	public static long toBinary(File text, File binary) throws IOException {
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(binary), 1 << 16));
+		final long[] rows = { 0 };
+		try {
+			out.writeInt(0);	// row count, written at the end
+			scan(text, 1, null, new Accumulator() {
+				public void row(double label, int[] dims, double[] vals, int nnz) {
+					try {
+						out.writeDouble(label);
+						out.writeInt(nnz);
+						for (int k = 0; k < nnz; k++) out.writeInt(dims[k]);
+						for (int k = 0; k < nnz; k++) out.writeDouble(vals[k]);
+					}
+					catch (IOException e) {
+						throw new RuntimeException(e);
+					}
+					rows[0]++;
+				}
+				public void merge(Accumulator other) {}
+				public Accumulator fresh() { return this; }
+			});
+		}
+		finally {
+			out.close();
+		}
+		RandomAccessFile raf = new RandomAccessFile(binary, "rw");
+		try {
+			raf.writeInt((int)rows[0]);
+		}
+		finally {
+			raf.close();
+		}
+		return rows[0];
+	}
+}
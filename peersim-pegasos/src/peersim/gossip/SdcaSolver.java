@@ -0,0 +1,166 @@
+/*
+ * Peersim-Gadget : A Gadget protocol implementation in peersim based on the paper
+ * Chase Henzel, Haimonti Dutta
+ * GADGET SVM: A Gossip-bAseD sub-GradiEnT SVM Solver
+ *
+ * Copyright (C) 2012
+ * Deepak Nayak
+ * Columbia University, Computer Science MS'13
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package peersim.gossip;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+import jnisvmlight.LabeledFeatureVector;
+import peersim.config.Configuration;
+import peersim.core.CommonState;
+
+/**
+ * Class SdcaSolver
+ * Local dual coordinate descent (SDCA) for the hinge loss. Every point n of
+ * the shard has a dual variable a_n in [0, 1], kept across iterations. Starting
+ * from the consensus weights v, a pass visits the points in random order and
+ * moves a_n to the best value of its own coordinate,
+ * a_n += clip((1 - y*&lt;v,x&gt;) * lambda*N / ||x||^2) within [0, 1],
+ * updating v += delta * y*x / (lambda*N). The local problem is solved far
+ * better than by one subgradient step, and averaging the nodes' changes of v,
+ * as push-sum does, is the safe aggregation of distributed dual methods, so
+ * fewer consensus phases are needed for the same objective.
+ * <p>
+ * The number of passes per iteration is set with protocol.1.passes. The
+ * iteration number is not used: the steps come from the dual problem.
+ */
+public class SdcaSolver extends LocalSolver {
+
+	/**
+	 * Config option of the protocol giving the passes over the shard per
+	 * iteration, defaults to 1
+	 * @config
+	 */
+	private static final String PAR_PASSES = "passes";
+
+	private int passes;
+
+	/** dual variables of the points of the shard */
+	private double[] dual;
+
+	/** squared norms of the points */
+	private double[] xnorm2;
+
+	/** version of the shard the dual variables belong to */
+	private int cachedVersion = -1;
+
+	/** offset of that version, see {@link PegasosNode#getShardOffset()} */
+	private long cachedOffset;
+
+	public SdcaSolver(String prefix) {
+		passes = Configuration.getInt(prefix + "." + PAR_PASSES, 1);
+	}
+
+	public void step(PegasosNode pn, double lambda, int t) {
+		LabeledFeatureVector[] data = pn.getShard();
+		int N = data.length;
+		if(pn.getShardVersion() != cachedVersion) {
+			// the points still in the shard keep their dual variables
+			double[] old = dual;
+			dual = new double[N];
+			if(old != null) {
+				int shift = (int)(pn.getShardOffset() - cachedOffset);
+				for (int n = 0; n < N && n + shift < old.length; n++)
+					dual[n] = old[n + shift];
+			}
+			cachedOffset = pn.getShardOffset();
+			xnorm2 = new double[N];
+			for (int n = 0; n < N; n++) {
+				for (int k = 0; k < data[n].size(); k++)
+					xnorm2[n] += data[n].getValueAt(k) * data[n].getValueAt(k);
+			}
+			cachedVersion = pn.getShardVersion();
+		}
+		TreeMap<Integer, Double> v = new TreeMap<Integer, Double>(pn.getWtvector().getWeights());
+		double scale = lambda * N;
+		int[] order = new int[N];
+		for (int n = 0; n < N; n++) order[n] = n;
+		pn.misclassified = 0;	// counted during the first pass
+		for (int pass = 0; pass < passes; pass++) {
+			// random permutation of the points
+			for (int n = N - 1; n > 0; n--) {
+				int j = CommonState.r.nextInt(n + 1);
+				int tmp = order[n]; order[n] = order[j]; order[j] = tmp;
+			}
+			for (int i = 0; i < N; i++) {
+				int n = order[i];
+				if(xnorm2[n] == 0.0) continue;
+				LabeledFeatureVector x = data[n];
+				double y = x.getLabel();
+				double dotprod = 0.0;
+				for (int k = 0; k < x.size(); k++) {
+					Double wval = v.get(x.getDimAt(k));
+					if(wval != null) dotprod += wval * x.getValueAt(k);
+				}
+				if(pass == 0 && y * dotprod < 0) pn.misclassified++;
+				double a = Math.max(0.0, Math.min(1.0, dual[n] + (1 - y * dotprod) * scale / xnorm2[n]));
+				double delta = a - dual[n];
+				if(delta == 0.0) continue;
+				dual[n] = a;
+				for (int k = 0; k < x.size(); k++) {
+					Double wval = v.get(x.getDimAt(k));
+					v.put(x.getDimAt(k), ((wval == null) ? 0.0 : wval) + delta * y * x.getValueAt(k) / scale);
+				}
+			}
+		}
+		if(Debug.ON) {
+			System.out.println("[DEBUG] #misclassified at node[" + pn.getID() + "] : "
+						+ pn.misclassified);
+		}
+		// N times the new iterate, as the subgradient step
+		for (Map.Entry<Integer, Double> entry : v.entrySet()) {
+			entry.setValue(N * entry.getValue());
+		}
+		pn.getWtvector().setFeatures(v);
+	}
+
+	/** Writes the dual variables */
+	public void save(DataOutput out) throws IOException {
+		out.writeLong(cachedOffset);
+		out.writeInt((dual == null) ? -1 : dual.length);
+		if(dual != null)
+			for (double a : dual) out.writeDouble(a);
+	}
+
+	/** Reads the dual variables, the norms are computed again at the next step */
+	public void load(DataInput in) throws IOException {
+		cachedOffset = in.readLong();
+		int n = in.readInt();
+		dual = (n < 0) ? null : new double[n];
+		for (int i = 0; i < n; i++) dual[i] = in.readDouble();
+		cachedVersion = -1;
+	}
+
+	public Object clone() {
+		SdcaSolver s = (SdcaSolver)super.clone();
+		// dual variables belong to the shard of one node
+		s.dual = null;
+		s.xnorm2 = null;
+		s.cachedVersion = -1;
+		return s;
+	}
+}
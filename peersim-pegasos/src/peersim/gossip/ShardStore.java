@@ -0,0 +1,251 @@
+/*
+ * Peersim-Gadget : A Gadget protocol implementation in peersim based on the paper
+ * Chase Henzel, Haimonti Dutta
+ * GADGET SVM: A Gossip-bAseD sub-GradiEnT SVM Solver
+ *
+ * Copyright (C) 2012
+ * Deepak Nayak
+ * Columbia University, Computer Science MS'13
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package peersim.gossip;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import jnisvmlight.LabeledFeatureVector;
+
+import peersim.core.Network;
+import peersim.core.Node;
+
+/**
+ * Class ShardStore
+ * Keeps the shards of the nodes on disk instead of the heap, so that the
+ * data set is no longer bounded by the heap size. Every shard is written
+ * once, when its node is created, to s_&lt;ID&gt;.bin in a binary layout
+ * (point count, then per point the label, the number of entries, the
+ * indices and the values) that is read back without any parsing. The shards
+ * read back are kept in a least recently used cache of a bounded size.
+ * <p>
+ * When a shard is read, the shards of the next nodes in network order,
+ * which is the order of the cycles unless they are shuffled, are read by a
+ * background thread so that they are ready when their nodes are scheduled.
+ * The cache itself is only used by the simulation thread.
+ */
+public final class ShardStore {
+
+	/** Default size of the cache, 64 MB */
+	public static final long CACHE_BYTES = 64L << 20;
+
+	private static File dir = null;
+
+	private static long capacity;
+
+	private static int prefetch;
+
+	/** cached shards by node ID, in access order */
+	private static final LinkedHashMap<Long, LabeledFeatureVector[]> cache =
+			new LinkedHashMap<Long, LabeledFeatureVector[]>(16, 0.75f, true);
+
+	/** estimated bytes of the cached shards */
+	private static long cached = 0;
+
+	/** shards being read in the background */
+	private static final Map<Long, Future<LabeledFeatureVector[]>> pending =
+			new HashMap<Long, Future<LabeledFeatureVector[]>>();
+
+	private static ExecutorService loader = null;
+
+	/** Shards found in the cache, found read ahead, and read on demand */
+	public static long hits = 0, prefetched = 0, misses = 0;
+
+	/** Bytes read from disk */
+	public static long bytesRead = 0;
+
+	private ShardStore() {}
+
+	/**
+	 * Stores the shards in the directory path, with a cache of capacity
+	 * bytes, reading ahead the shards of the next prefetch nodes
+	 */
+	public static void open(String path, long capacity, int prefetch) {
+		dir = new File(path);
+		if(!dir.isDirectory() && !dir.mkdirs())
+			throw new RuntimeException("cannot create shard store " + path);
+		ShardStore.capacity = capacity;
+		ShardStore.prefetch = prefetch;
+		if(prefetch > 0 && loader == null) {
+			loader = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "shard-prefetch");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+	}
+
+	public static boolean isOpen() {
+		return dir != null;
+	}
+
+	private static File file(long id) {
+		return new File(dir, "s_" + id + ".bin");
+	}
+
+	/** Writes the shard of the node with the given ID */
+	public static void put(long id, LabeledFeatureVector[] data) {
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(file(id)), 1 << 16));
+			out.writeInt(data.length);
+			for (LabeledFeatureVector x : data) {
+				out.writeDouble(x.getLabel());
+				out.writeInt(x.size());
+				for (int k = 0; k < x.size(); k++) out.writeInt(x.getDimAt(k));
+				for (int k = 0; k < x.size(); k++) out.writeDouble(x.getValueAt(k));
+			}
+		}
+		catch (IOException ioe) {
+			throw new RuntimeException("cannot write shard " + id, ioe);
+		}
+		finally {
+			if(out != null) {
+				try { out.close(); }
+				catch (IOException ioe) { ioe.printStackTrace(); }
+			}
+		}
+		// a rewritten shard replaces its cached copy, stale reads are dropped
+		LabeledFeatureVector[] old = cache.remove(id);
+		if(old != null) {
+			cached -= bytes(old);
+			insert(id, data);
+		}
+		Future<LabeledFeatureVector[]> ahead = pending.remove(id);
+		if(ahead != null) ahead.cancel(false);
+	}
+
+	/** Reads the shard of the node with the given ID */
+	private static LabeledFeatureVector[] read(long id) throws IOException {
+		File f = file(id);
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(f), 1 << 16));
+		try {
+			LabeledFeatureVector[] data = new LabeledFeatureVector[in.readInt()];
+			for (int n = 0; n < data.length; n++) {
+				double label = in.readDouble();
+				int[] dims = new int[in.readInt()];
+				double[] vals = new double[dims.length];
+				for (int k = 0; k < dims.length; k++) dims[k] = in.readInt();
+				for (int k = 0; k < vals.length; k++) vals[k] = in.readDouble();
+				data[n] = new LabeledFeatureVector(label, dims, vals);
+			}
+			synchronized(ShardStore.class) { bytesRead += f.length(); }
+			return data;
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	/** Estimated heap bytes of a shard */
+	private static long bytes(LabeledFeatureVector[] data) {
+		long b = 16 + 8L * data.length;
+		for (LabeledFeatureVector x : data) b += 64 + 12L * x.size();
+		return b;
+	}
+
+	/** The shard of the node, from the cache or from disk */
+	public static LabeledFeatureVector[] get(PegasosNode pn) {
+		long id = pn.getID();
+		LabeledFeatureVector[] data = cache.get(id);
+		if(data != null) {
+			hits++;
+		}
+		else {
+			Future<LabeledFeatureVector[]> ahead = pending.remove(id);
+			try {
+				if(ahead != null) {
+					data = ahead.get();
+					prefetched++;
+				}
+				else {
+					data = read(id);
+					misses++;
+				}
+			}
+			catch (Exception e) {
+				throw new RuntimeException("cannot read shard " + id, e);
+			}
+			insert(id, data);
+		}
+		readAhead(pn.getIndex());
+		return data;
+	}
+
+	/** Caches a shard, evicting the least recently used ones over capacity */
+	private static void insert(long id, LabeledFeatureVector[] data) {
+		cache.put(id, data);
+		cached += bytes(data);
+		Iterator<LabeledFeatureVector[]> it = cache.values().iterator();
+		while(cached > capacity && cache.size() > 1) {
+			cached -= bytes(it.next());
+			it.remove();
+		}
+	}
+
+	/** Starts reading the shards of the nodes after the given index */
+	private static void readAhead(int index) {
+		if(loader == null || index < 0) return;
+		int size = Network.size();
+		for (int j = 1; j <= prefetch && j < size; j++) {
+			Node node = Network.get((index + j) % size);
+			final long id = node.getID();
+			if(cache.containsKey(id) || pending.containsKey(id)) continue;
+			pending.put(id, loader.submit(new Callable<LabeledFeatureVector[]>() {
+				public LabeledFeatureVector[] call() throws IOException {
+					return read(id);
+				}
+			}));
+		}
+	}
+
+	/** Prints the cache statistics */
+	public static void report() {
+		long total = hits + prefetched + misses;
+		System.out.println("[store] " + total + " reads, " + hits + " hits, "
+				+ prefetched + " read ahead, " + misses + " misses, hit rate "
+				+ ((total == 0) ? 0.0 : (double)(hits + prefetched) / total)
+				+ ", " + (bytesRead >> 20) + " MB read, "
+				+ cache.size() + " shards cached");
+	}
+}
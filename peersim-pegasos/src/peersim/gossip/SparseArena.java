@@ -0,0 +1,280 @@
+/*
+ * Peersim-Gadget : A Gadget protocol implementation in peersim based on the paper
+ * Chase Henzel, Haimonti Dutta
+ * GADGET SVM: A Gossip-bAseD sub-GradiEnT SVM Solver
+ *
+ * Copyright (C) 2012
+ * Deepak Nayak
+ * Columbia University, Computer Science MS'13
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package peersim.gossip;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import jnipegasos.PrimalSVMWeights;
+
+/**
+ * Class SparseArena
+ * Off-heap storage for sparse weight vectors, the paged counterpart of
+ * {@link WeightArena} for the PrimalSVMWeights of the GADGET protocols. A
+ * vector is kept encoded by {@link SparseVectorCodec} (about 9 bytes per
+ * entry instead of the 80 or so of a TreeMap entry) in a block of a direct
+ * buffer page; blocks come in power of two size classes from 64 bytes to a
+ * page, with a free list per class, so a vector that grows moves to a
+ * larger block and its old block is reused. Vectors larger than a page get
+ * a page of their own.
+ * <p>
+ * A vector is used through its {@link Slot}: {@link Slot#get} decodes it into
+ * a PrimalSVMWeights, which stays on the heap until it is one of the least
+ * recently used beyond the configured number of live vectors; it is then
+ * encoded back into its block. Only a handful of vectors are in use at a
+ * time in a cycle, so the heap holds that many TreeMaps whatever the
+ * number of nodes. A PrimalSVMWeights obtained from get must not be kept
+ * across the use of more than that many other slots.
+ */
+public final class SparseArena {
+
+	/** Default page size, 1 MB */
+	public static final int PAGE_BYTES = 1 << 20;
+
+	/** Default number of vectors kept decoded on the heap */
+	public static final int LIVE = 64;
+
+	/**
+	 * Fewest vectors kept decoded: a step uses a few at once (the node's,
+	 * its peer's, the running sum), which must not page each other out
+	 */
+	public static final int MIN_LIVE = 8;
+
+	/** Smallest block */
+	private static final int MIN_BLOCK = 64;
+
+	private final int pageBytes;
+
+	/** Block sizes MIN_BLOCK &lt;&lt; c; class classes is a page of its own */
+	private final int classes;
+
+	private final List<ByteBuffer> pages = new ArrayList<ByteBuffer>();
+
+	/** Page being carved into blocks, per class, -1 if none */
+	private final int[] current;
+
+	/** Bytes of the current page handed out, per class */
+	private final int[] carved;
+
+	/** Free blocks per class */
+	private final long[][] free;
+
+	private final int[] freeCount;
+
+	/** Block of every slot, page &lt;&lt; 32 | offset, -1 if none */
+	private long[] address = new long[1024];
+
+	private byte[] blockClass = new byte[1024];
+
+	/** Bytes of the encoding of every slot */
+	private int[] length = new int[1024];
+
+	private int slots = 0;
+
+	/** Encoded bytes of all slots */
+	private long encoded = 0;
+
+	/** Bytes of all pages */
+	private long reserved = 0;
+
+	/** Decoded vectors, least recently used first */
+	private final LinkedHashMap<Slot, Slot> live;
+
+	/**
+	 * @param pageBytes size of a page, at least 64 bytes
+	 * @param liveVectors number of vectors kept decoded on the heap, at least
+	 * {@link #MIN_LIVE}
+	 */
+	public SparseArena(int pageBytes, final int liveVectors) {
+		int c = 0;
+		while((MIN_BLOCK << (c + 1)) <= pageBytes && c < 30) c++;
+		this.pageBytes = MIN_BLOCK << c;
+		this.classes = c + 1;
+		current = new int[classes];
+		carved = new int[classes];
+		free = new long[classes][];
+		freeCount = new int[classes];
+		for (int k = 0; k < classes; k++) {
+			current[k] = -1;
+			free[k] = new long[16];
+		}
+		live = new LinkedHashMap<Slot, Slot>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			protected boolean removeEldestEntry(Map.Entry<Slot, Slot> eldest) {
+				if(size() <= Math.max(MIN_LIVE, liveVectors)) return false;
+				eldest.getKey().pageOut();
+				return true;
+			}
+		};
+	}
+
+	/** A new slot holding w, which is live until others are used */
+	public synchronized Slot newSlot(PrimalSVMWeights w) {
+		if(slots == address.length) {
+			int n = 2 * slots;
+			address = Arrays.copyOf(address, n);
+			blockClass = Arrays.copyOf(blockClass, n);
+			length = Arrays.copyOf(length, n);
+		}
+		address[slots] = -1;
+		length[slots] = 0;
+		Slot s = new Slot(slots++);
+		s.set(w);
+		return s;
+	}
+
+	/**
+	 * The vector of one node, on the heap while in use and in the arena
+	 * otherwise.
+	 */
+	public final class Slot {
+
+		private final int id;
+
+		/** decoded vector, null when paged out */
+		private PrimalSVMWeights vector;
+
+		private Slot(int id) {
+			this.id = id;
+		}
+
+		/** The vector, decoded if it was paged out */
+		public PrimalSVMWeights get() {
+			synchronized(SparseArena.this) {
+				if(vector == null) vector = new PrimalSVMWeights(read(id));
+				live.put(this, this);
+				return vector;
+			}
+		}
+
+		/** Replaces the vector */
+		public void set(PrimalSVMWeights w) {
+			synchronized(SparseArena.this) {
+				vector = w;
+				live.put(this, this);
+			}
+		}
+
+		/** Encodes the vector into the arena and drops it from the heap */
+		private void pageOut() {
+			write(id, vector.getWeights());
+			vector = null;
+		}
+	}
+
+	private TreeMap<Integer, Double> read(int id) {
+		if(length[id] == 0) return new TreeMap<Integer, Double>();
+		return SparseVectorCodec.decode(block(address[id], length[id]));
+	}
+
+	private void write(int id, Map<Integer, Double> w) {
+		int size = SparseVectorCodec.encodedSize(w, SparseVectorCodec.RAW);
+		int c = classOf(size);
+		if(address[id] < 0 || blockClass[id] != c
+				|| (c == classes && size > pages.get((int)(address[id] >>> 32)).capacity())) {
+			release(id);
+			address[id] = take(c, size);
+			blockClass[id] = (byte)c;
+		}
+		encoded += size - length[id];
+		length[id] = size;
+		SparseVectorCodec.encode(w, SparseVectorCodec.RAW, block(address[id], size));
+	}
+
+	/** Size class of a block of size bytes */
+	private int classOf(int size) {
+		for (int c = 0; c < classes; c++) {
+			if(size <= (MIN_BLOCK << c)) return c;
+		}
+		return classes;
+	}
+
+	/** A block of class c, size bytes for a page of its own */
+	private long take(int c, int size) {
+		if(c == classes) {
+			pages.add(ByteBuffer.allocateDirect(size));
+			reserved += size;
+			return (long)(pages.size() - 1) << 32;
+		}
+		if(freeCount[c] > 0) return free[c][--freeCount[c]];
+		int block = MIN_BLOCK << c;
+		if(current[c] < 0 || carved[c] + block > pageBytes) {
+			pages.add(ByteBuffer.allocateDirect(pageBytes));
+			reserved += pageBytes;
+			current[c] = pages.size() - 1;
+			carved[c] = 0;
+		}
+		long a = ((long)current[c] << 32) | carved[c];
+		carved[c] += block;
+		return a;
+	}
+
+	/** Returns the block of slot id to its free list, or its own page */
+	private void release(int id) {
+		long a = address[id];
+		if(a < 0) return;
+		int c = blockClass[id];
+		if(c == classes) {
+			int page = (int)(a >>> 32);
+			reserved -= pages.get(page).capacity();
+			pages.set(page, null);
+		}
+		else {
+			if(freeCount[c] == free[c].length)
+				free[c] = Arrays.copyOf(free[c], 2 * freeCount[c]);
+			free[c][freeCount[c]++] = a;
+		}
+		encoded -= length[id];
+		length[id] = 0;
+		address[id] = -1;
+	}
+
+	private ByteBuffer block(long a, int size) {
+		ByteBuffer b = pages.get((int)(a >>> 32)).duplicate();
+		int offset = (int)a;
+		b.position(offset);
+		b.limit(offset + size);
+		return b.slice();
+	}
+
+	/** Number of slots */
+	public synchronized int getSlots() { return slots; }
+
+	/** Bytes of the direct buffers */
+	public synchronized long getBytes() { return reserved; }
+
+	/** Encoded bytes of the paged out vectors */
+	public synchronized long getEncodedBytes() { return encoded; }
+
+	/** One line of statistics */
+	public synchronized String report() {
+		return slots + " vectors, " + live.size() + " decoded, " + (encoded >> 10)
+				+ " KB encoded in " + (reserved >> 10) + " KB of pages";
+	}
+}
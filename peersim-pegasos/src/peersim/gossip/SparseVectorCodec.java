@@ -0,0 +1,259 @@
+/*
+ * Peersim-Gadget : A Gadget protocol implementation in peersim based on the paper
+ * Chase Henzel, Haimonti Dutta
+ * GADGET SVM: A Gossip-bAseD sub-GradiEnT SVM Solver
+ *
+ * Copyright (C) 2012
+ * Deepak Nayak
+ * Columbia University, Computer Science MS'13
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package peersim.gossip;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Class SparseVectorCodec
+ * Compact binary form of a sparse weight vector, shared by the model export,
+ * the checkpoints and anything else sending vectors. An encoded vector is
+ * <pre>
+ * varint n, byte precision, varint bytes of the indices, [double scale],
+ * n varint index gaps, n values
+ * </pre>
+ * The indices are sorted and stored as the unsigned LEB128 varint of their
+ * gap to the previous one, mostly one or two bytes instead of four. The
+ * values are stored as doubles ({@link #RAW}, exact), floats
+ * ({@link #FLOAT}) or 16 bit integers times scale/32767, scale being the
+ * largest absolute value ({@link #QUANT16}). A {@link Reader} walks an
+ * encoded vector in place, e.g. in a memory mapped file, without copying
+ * or allocating.
+ */
+public final class SparseVectorCodec {
+
+	/** 8 byte doubles, exact */
+	public static final int RAW = 0;
+	/** 4 byte floats */
+	public static final int FLOAT = 1;
+	/** 2 byte integers scaled by the largest absolute value */
+	public static final int QUANT16 = 2;
+
+	private static final double QUANT_MAX = 32767.0;
+
+	private SparseVectorCodec() {}
+
+	/** The precision named raw, float or quant16 */
+	public static int precision(String name) {
+		if(name.equals("raw")) return RAW;
+		if(name.equals("float")) return FLOAT;
+		if(name.equals("quant16")) return QUANT16;
+		throw new IllegalArgumentException("unknown precision: " + name);
+	}
+
+	private static int valueBytes(int precision) {
+		switch(precision) {
+		case RAW: return 8;
+		case FLOAT: return 4;
+		case QUANT16: return 2;
+		default: throw new IllegalArgumentException("precision=" + precision);
+		}
+	}
+
+	private static int varintSize(long v) {
+		int size = 1;
+		while((v >>>= 7) != 0) size++;
+		return size;
+	}
+
+	private static void putVarint(ByteBuffer out, long v) {
+		while((v & ~0x7FL) != 0) {
+			out.put((byte)((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+		out.put((byte)v);
+	}
+
+	private static long getVarint(ByteBuffer in) {
+		long v = 0;
+		for(int shift = 0;; shift += 7) {
+			byte b = in.get();
+			v |= (long)(b & 0x7F) << shift;
+			if(b >= 0) return v;
+		}
+	}
+
+	/** Bytes of the indices of w, gaps from -1 so negative keys are refused */
+	private static long indexBytes(Map<Integer, Double> w) {
+		long bytes = 0;
+		long prev = -1;
+		for (Integer f : w.keySet()) {
+			if(f < 0) throw new IllegalArgumentException("negative feature " + f);
+			bytes += varintSize(f - prev);
+			prev = f;
+		}
+		return bytes;
+	}
+
+	/** Size of the encoding of w */
+	public static int encodedSize(Map<Integer, Double> w, int precision) {
+		long ib = indexBytes(w);
+		long size = varintSize(w.size()) + 1 + varintSize(ib)
+				+ ((precision == QUANT16) ? 8 : 0)
+				+ ib + (long)valueBytes(precision) * w.size();
+		if(size > Integer.MAX_VALUE) throw new IllegalArgumentException("vector too large");
+		return (int)size;
+	}
+
+	/**
+	 * Writes w, whose keys must be sorted (a TreeMap), at the position of
+	 * out, which must have {@link #encodedSize} bytes left.
+	 */
+	public static void encode(Map<Integer, Double> w, int precision, ByteBuffer out) {
+		long ib = indexBytes(w);
+		putVarint(out, w.size());
+		out.put((byte)precision);
+		putVarint(out, ib);
+		double scale = 0.0;
+		if(precision == QUANT16) {
+			for (Double v : w.values()) scale = Math.max(scale, Math.abs(v));
+			out.putDouble(scale);
+		}
+		long prev = -1;
+		for (Integer f : w.keySet()) {
+			putVarint(out, f - prev);
+			prev = f;
+		}
+		for (Double v : w.values()) {
+			if(precision == RAW) out.putDouble(v);
+			else if(precision == FLOAT) out.putFloat(v.floatValue());
+			else out.putShort((short)((scale == 0.0) ? 0 : Math.round(v / scale * QUANT_MAX)));
+		}
+	}
+
+	/** The encoding of w in a new array */
+	public static byte[] encode(Map<Integer, Double> w, int precision) {
+		ByteBuffer out = ByteBuffer.allocate(encodedSize(w, precision));
+		encode(w, precision, out);
+		return out.array();
+	}
+
+	/** Reads a vector at the position of in, which is moved past it */
+	public static TreeMap<Integer, Double> decode(ByteBuffer in) {
+		TreeMap<Integer, Double> w = new TreeMap<Integer, Double>();
+		Reader r = new Reader(in);
+		while(r.next()) w.put(r.index(), r.value());
+		in.position(r.end());
+		return w;
+	}
+
+	/** Writes the length of the encoding of w, then the encoding; -1 for null */
+	public static void write(DataOutput out, Map<Integer, Double> w, int precision)
+			throws IOException {
+		if(w == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = encode(w, precision);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/** Reads what {@link #write} wrote */
+	public static TreeMap<Integer, Double> read(DataInput in) throws IOException {
+		int length = in.readInt();
+		if(length < 0) return null;
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return decode(ByteBuffer.wrap(bytes));
+	}
+
+	/**
+	 * Walks the entries of an encoded vector in place:
+	 * <pre>
+	 * while(r.next()) use(r.index(), r.value());
+	 * </pre>
+	 */
+	public static final class Reader {
+
+		private final ByteBuffer buf;
+
+		private final int size;
+
+		private final int precision;
+
+		private final double scale;
+
+		/** bytes of a value */
+		private final int width;
+
+		/** position of the next index and of the next value */
+		private int indexPos;
+
+		private int valuePos;
+
+		private int read = 0;
+
+		private int index = -1;
+
+		/** Reads the vector at the position of in, in is not moved */
+		public Reader(ByteBuffer in) {
+			buf = in.duplicate();
+			buf.order(in.order());
+			size = (int)getVarint(buf);
+			precision = buf.get();
+			int ib = (int)getVarint(buf);
+			scale = (precision == QUANT16) ? buf.getDouble() / QUANT_MAX : 1.0;
+			width = valueBytes(precision);
+			indexPos = buf.position();
+			valuePos = indexPos + ib;
+		}
+
+		/** Number of entries */
+		public int size() {
+			return size;
+		}
+
+		/** Moves to the next entry, false after the last one */
+		public boolean next() {
+			if(read == size) return false;
+			buf.position(indexPos);
+			index += (int)getVarint(buf);
+			indexPos = buf.position();
+			read++;
+			return true;
+		}
+
+		public int index() {
+			return index;
+		}
+
+		public double value() {
+			int pos = valuePos + (read - 1) * width;
+			if(precision == RAW) return buf.getDouble(pos);
+			if(precision == FLOAT) return buf.getFloat(pos);
+			return buf.getShort(pos) * scale;
+		}
+
+		/** Position just after the vector in the buffer given at creation */
+		public int end() {
+			return valuePos + size * width;
+		}
+	}
+}
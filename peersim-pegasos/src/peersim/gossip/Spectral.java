@@ -0,0 +1,263 @@
+/*
+ * Peersim-Gadget : A Gadget protocol implementation in peersim based on the paper
+ * Chase Henzel, Haimonti Dutta
+ * GADGET SVM: A Gossip-bAseD sub-GradiEnT SVM Solver
+ *
+ * Copyright (C) 2012
+ * Deepak Nayak
+ * Columbia University, Computer Science MS'13
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package peersim.gossip;
+
+import java.util.Random;
+
+/**
+ * Class Spectral
+ * Estimates the second largest eigenvalue modulus (SLEM) of a gossip matrix.
+ * For a doubly stochastic B the disagreement between nodes shrinks roughly by a
+ * factor SLEM in every averaging round, so it bounds the speed of push-sum.
+ * The estimate is computed by the Lanczos process on the subspace orthogonal to
+ * the all-ones vector, which only needs matrix-vector products and converges
+ * in about the square root of the iterations power iteration would need. The
+ * start vector comes from a private random generator so that the simulation's
+ * {@link peersim.core.CommonState#r} stream is not disturbed.
+ */
+public final class Spectral {
+
+	/** Default maximum number of Lanczos iterations */
+	public static final int MAX_ITER = 1000;
+
+	/** Default relative tolerance between two successive estimates */
+	public static final double TOLERANCE = 1e-9;
+
+	private Spectral() {}
+
+	/**
+	 * A linear operator y = Mx, used so that dense and sparse gossip matrices
+	 * share the same eigenvalue solver.
+	 */
+	public interface Operator {
+		/** number of rows/columns */
+		int size();
+		/** computes y = Mx, y is overwritten */
+		void apply(double[] x, double[] y);
+	}
+
+	/**
+	 * Operator applying the transpose of a dense matrix, which is what pushsum2
+	 * does: x_i = sum_j B[j][i] * x_j
+	 */
+	public static Operator transposeOf(final double[][] B) {
+		return new Operator() {
+			public int size() { return B.length; }
+			public void apply(double[] x, double[] y) {
+				int n = B.length;
+				for(int i=0;i<n;i++) y[i] = 0.0;
+				for(int j=0;j<n;j++) {
+					double xj = x[j];
+					if(xj == 0.0) continue;
+					double[] row = B[j];
+					for(int i=0;i<n;i++) {
+						y[i] += row[i] * xj;
+					}
+				}
+			}
+		};
+	}
+
+	/**
+	 * Expected matrix of one pushsum1 step on the overlay nbrs: a node i chosen
+	 * uniformly picks a neighbour j uniformly and both keep (x_i + x_j)/2, i.e.
+	 * W = I - 1/(2n) * sum_i 1/d_i * sum_j (e_i - e_j)(e_i - e_j)'.
+	 * Sparse, each product costs O(#links).
+	 */
+	public static Operator uniformGossip(final int[][] nbrs) {
+		return new Operator() {
+			public int size() { return nbrs.length; }
+			public void apply(double[] x, double[] y) {
+				int n = nbrs.length;
+				System.arraycopy(x, 0, y, 0, n);
+				for(int i=0;i<n;i++) {
+					int d = nbrs[i].length;
+					if(d == 0) continue;
+					double f = 1.0 / (2.0 * n * d);
+					for(int j : nbrs[i]) {
+						double c = f * (x[i] - x[j]);
+						y[i] -= c;
+						y[j] += c;
+					}
+				}
+			}
+		};
+	}
+
+	/**
+	 * Per cycle contraction of the disagreement under pushsum1, where every
+	 * node gossips once per cycle: n steps of the matrix of
+	 * {@link #uniformGossip}, the square root since W is a mean square rate.
+	 */
+	public static double uniformCycleRate(int[][] nbrs) {
+		return uniformCycleRate(nbrs, MAX_ITER);
+	}
+
+	/** As {@link #uniformCycleRate(int[][])} with at most maxIter iterations */
+	public static double uniformCycleRate(int[][] nbrs, int maxIter) {
+		double s = slem(uniformGossip(nbrs), maxIter, TOLERANCE);
+		return Math.pow(s, nbrs.length / 2.0);
+	}
+
+	/** SLEM of the dense gossip matrix B as used by pushsum2 */
+	public static double slem(double[][] B) {
+		return slem(transposeOf(B), MAX_ITER, TOLERANCE);
+	}
+
+	/**
+	 * SLEM of the given symmetric operator, assuming the all-ones vector is
+	 * its eigenvector for eigenvalue 1 (true for any doubly stochastic matrix).
+	 */
+	public static double slem(Operator op, int maxIter, double tol) {
+		double[] ext = extremes(op, maxIter, tol);
+		return Math.max(Math.abs(ext[0]), Math.abs(ext[1]));
+	}
+
+	/**
+	 * Smallest and largest eigenvalue of the symmetric operator restricted to
+	 * the subspace orthogonal to the all-ones vector, by the Lanczos process.
+	 * The operator must leave that subspace invariant, e.g. a doubly
+	 * stochastic matrix or a graph Laplacian. No reorthogonalization is done,
+	 * which only affects the inner Ritz values, so memory stays at three
+	 * vectors. Stops when both extremes moved by less than tol times the
+	 * width of the spectrum between two checks.
+	 */
+	public static double[] extremes(Operator op, int maxIter, double tol) {
+		int n = op.size();
+		if(n < 2) return new double[] { 0.0, 0.0 };
+		int m = Math.min(maxIter, n - 1);
+		double[] alpha = new double[m];
+		double[] beta = new double[m];
+		double[] v = new double[n];
+		double[] vPrev = new double[n];
+		double[] w = new double[n];
+		Random r = new Random(n);
+		for(int i=0;i<n;i++) v[i] = r.nextDouble() - 0.5;
+		if(normalize(v) == 0.0) return new double[] { 0.0, 0.0 };
+		double[] ext = { 0.0, 0.0 };
+		double lo = Double.NaN, hi = Double.NaN;
+		for(int j=0;j<m;j++) {
+			op.apply(v, w);
+			center(w);
+			double a = dot(w, v);
+			double b = (j == 0) ? 0.0 : beta[j-1];
+			for(int i=0;i<n;i++) w[i] -= a * v[i] + b * vPrev[i];
+			alpha[j] = a;
+			beta[j] = Math.sqrt(dot(w, w));
+			boolean last = (j == m - 1) || beta[j] <= 1e-12 * Math.abs(a);
+			if(last || j % 5 == 4) {
+				ext = tridiagonalExtremes(alpha, beta, j + 1);
+				double width = Math.max(ext[1] - ext[0], Double.MIN_NORMAL);
+				if(last || (Math.abs(ext[0] - lo) <= tol * width
+						&& Math.abs(ext[1] - hi) <= tol * width)) break;
+				lo = ext[0];
+				hi = ext[1];
+			}
+			double[] tmp = vPrev; vPrev = v; v = w; w = tmp;
+			for(int i=0;i<n;i++) v[i] /= beta[j];
+		}
+		return ext;
+	}
+
+	/**
+	 * Smallest and largest eigenvalue of the m x m symmetric tridiagonal matrix
+	 * with diagonal alpha and off-diagonal beta, by Sturm sequence bisection.
+	 */
+	private static double[] tridiagonalExtremes(double[] alpha, double[] beta, int m) {
+		double lo = Double.MAX_VALUE, hi = -Double.MAX_VALUE;
+		for(int i=0;i<m;i++) {
+			double rad = (i > 0 ? Math.abs(beta[i-1]) : 0.0) + (i < m - 1 ? Math.abs(beta[i]) : 0.0);
+			lo = Math.min(lo, alpha[i] - rad);
+			hi = Math.max(hi, alpha[i] + rad);
+		}
+		return new double[] { kthEigenvalue(alpha, beta, m, 0, lo, hi),
+				kthEigenvalue(alpha, beta, m, m - 1, lo, hi) };
+	}
+
+	/** The k-th smallest eigenvalue (from 0) of the tridiagonal matrix in [lo, hi] */
+	private static double kthEigenvalue(double[] alpha, double[] beta, int m, int k,
+			double lo, double hi) {
+		for(int it=0;it<100 && hi - lo > 1e-15 * Math.max(1.0, Math.abs(hi));it++) {
+			double mid = 0.5 * (lo + hi);
+			if(countBelow(alpha, beta, m, mid) > k) hi = mid;
+			else lo = mid;
+		}
+		return 0.5 * (lo + hi);
+	}
+
+	/** Number of eigenvalues of the tridiagonal matrix smaller than x */
+	private static int countBelow(double[] alpha, double[] beta, int m, double x) {
+		int count = 0;
+		double q = 1.0;
+		for(int i=0;i<m;i++) {
+			double b2 = (i == 0) ? 0.0 : beta[i-1] * beta[i-1];
+			q = alpha[i] - x - ((i == 0) ? 0.0 : b2 / q);
+			if(q == 0.0) q = -1e-300;
+			if(q < 0.0) count++;
+		}
+		return count;
+	}
+
+	private static double dot(double[] x, double[] y) {
+		double s = 0.0;
+		for(int i=0;i<x.length;i++) s += x[i] * y[i];
+		return s;
+	}
+
+	/**
+	 * Predicted number of rounds for the disagreement to shrink by the factor
+	 * accuracy, given a per round contraction factor slem.
+	 */
+	public static double roundsToAccuracy(double slem, double accuracy) {
+		if(slem <= 0.0) return 1.0;
+		if(slem >= 1.0 || accuracy <= 0.0) return Double.POSITIVE_INFINITY;
+		return Math.ceil(Math.log(accuracy) / Math.log(slem));
+	}
+
+	/**
+	 * Per round contraction of the Chebyshev recurrence used by pushsum2 with
+	 * accel chebyshev, for a matrix of the given SLEM.
+	 */
+	public static double chebyshevRate(double slem) {
+		if(slem <= 0.0 || slem >= 1.0) return slem;
+		return slem / (1.0 + Math.sqrt(1.0 - slem * slem));
+	}
+
+	private static void center(double[] x) {
+		double mean = 0.0;
+		for(int i=0;i<x.length;i++) mean += x[i];
+		mean /= x.length;
+		for(int i=0;i<x.length;i++) x[i] -= mean;
+	}
+
+	private static double normalize(double[] x) {
+		center(x);
+		double norm = 0.0;
+		for(int i=0;i<x.length;i++) norm += x[i] * x[i];
+		norm = Math.sqrt(norm);
+		if(norm == 0.0) return 0.0;
+		for(int i=0;i<x.length;i++) x[i] /= norm;
+		return norm;
+	}
+}
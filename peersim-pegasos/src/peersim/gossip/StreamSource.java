@@ -0,0 +1,310 @@
+/*
+ * Peersim-Gadget : A Gadget protocol implementation in peersim based on the paper
+ * Chase Henzel, Haimonti Dutta
+ * GADGET SVM: A Gossip-bAseD sub-GradiEnT SVM Solver
+ *
+ * Copyright (C) 2012
+ * Deepak Nayak
+ * Columbia University, Computer Science MS'13
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package peersim.gossip;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import jnisvmlight.LabeledFeatureVector;
+
+import peersim.config.*;
+import peersim.core.*;
+
+/**
+ * Feeds new training points to the nodes while GADGET runs. At every
+ * execution (every control.X.step cycles) each node that is up receives
+ * {@value #PAR_RATE} points, read in order from an svmlight file or drawn
+ * from a generator, which are appended to its shard; with
+ * {@value #PAR_WINDOW} a node keeps only its most recent points. The local
+ * solvers take the new points into their next step.
+ * <p>
+ * The generator labels sparse gaussian points with a hidden hyperplane that
+ * moves by {@value #PAR_DRIFT} at every execution, so the stream can drift.
+ * Before being appended the points are classified by the current weights of
+ * their node; this prequential error is printed at every execution and
+ * shows how fast the consensus model tracks the stream.
+ */
+public class StreamSource implements Control {
+
+    // /////////////////////////////////////////////////////////////////////
+    // Constants
+    // /////////////////////////////////////////////////////////////////////
+
+    /**
+     * Svmlight file the points are read from, in order. When absent the
+     * points are generated.
+     * 
+     * @config
+     */
+    private static final String PAR_FILE = "file";
+
+    /**
+     * Number of points each node receives per execution, defaults to 10.
+     * 
+     * @config
+     */
+    private static final String PAR_RATE = "rate";
+
+    /**
+     * Maximum number of points kept per node, the oldest are dropped first.
+     * Defaults to 0, keeping all of them.
+     * 
+     * @config
+     */
+    private static final String PAR_WINDOW = "window";
+
+    /**
+     * Number of features of the generator, defaults to 1000.
+     * 
+     * @config
+     */
+    private static final String PAR_DIM = "dim";
+
+    /**
+     * Number of non-zero features of a generated point, defaults to 10.
+     * 
+     * @config
+     */
+    private static final String PAR_NNZ = "nnz";
+
+    /**
+     * Standard deviation of the move of the hidden hyperplane per
+     * execution, relative to its norm, defaults to 0.
+     * 
+     * @config
+     */
+    private static final String PAR_DRIFT = "drift";
+
+    /**
+     * Probability that a generated label is flipped, defaults to 0.
+     * 
+     * @config
+     */
+    private static final String PAR_NOISE = "noise";
+
+    // /////////////////////////////////////////////////////////////////////
+    // Fields
+    // /////////////////////////////////////////////////////////////////////
+
+    /** The name of this control in the configuration */
+    private final String name;
+
+    private final int rate;
+
+    private final int window;
+
+    private final int dim;
+
+    private final int nnz;
+
+    private final double drift;
+
+    private final double noise;
+
+    /** open file, null for the generator or once the file is exhausted */
+    private BufferedReader in = null;
+
+    private final boolean fromFile;
+
+    /** hidden hyperplane of the generator, indices 1..dim */
+    private double[] hyperplane;
+
+    /**
+     * Generator of the points, seeded from the simulation so that runs
+     * repeat, but separate so the other random choices are not disturbed
+     */
+    private final Random random;
+
+    private long total = 0, errors = 0;
+
+    // /////////////////////////////////////////////////////////////////////
+    // Constructor
+    // /////////////////////////////////////////////////////////////////////
+
+    /**
+     * Creates a new control reading configuration parameters.
+     */
+    public StreamSource(String name) {
+        this.name = name;
+        rate = Configuration.getInt(name + "." + PAR_RATE, 10);
+        window = Configuration.getInt(name + "." + PAR_WINDOW, 0);
+        dim = Configuration.getInt(name + "." + PAR_DIM, 1000);
+        nnz = Math.min(dim, Configuration.getInt(name + "." + PAR_NNZ, 10));
+        drift = Configuration.getDouble(name + "." + PAR_DRIFT, 0.0);
+        noise = Configuration.getDouble(name + "." + PAR_NOISE, 0.0);
+        random = new Random(CommonState.r.nextLong());
+        fromFile = Configuration.contains(name + "." + PAR_FILE);
+        if (fromFile) {
+            String file = Configuration.getString(name + "." + PAR_FILE);
+            try {
+                in = new BufferedReader(new FileReader(file));
+            } catch (IOException e) {
+                throw new IllegalParameterException(name + "." + PAR_FILE,
+                        "cannot open " + file);
+            }
+        } else {
+            hyperplane = new double[dim + 1];
+            for (int f = 1; f <= dim; f++)
+                hyperplane[f] = random.nextGaussian();
+            normalize(hyperplane);
+        }
+    }
+
+    // /////////////////////////////////////////////////////////////////////
+    // Methods
+    // /////////////////////////////////////////////////////////////////////
+
+    /**
+     * Appends new points to the shards of the nodes that are up.
+     * 
+     * @return always false, this control never stops the simulation.
+     */
+    public boolean execute() {
+        if (GadgetProtocol4.end) return false;
+        if (!fromFile && drift > 0) {
+            for (int f = 1; f <= dim; f++)
+                hyperplane[f] += drift * random.nextGaussian() / Math.sqrt(dim);
+            normalize(hyperplane);
+        }
+        long added = 0, wrong = 0, points = 0;
+        int nodes = 0;
+        for (int i = 0; i < Network.size(); i++) {
+            Node node = Network.get(i);
+            if (!node.isUp()) continue;
+            PegasosNode pn = (PegasosNode) node;
+            LabeledFeatureVector[] rows = new LabeledFeatureVector[rate];
+            int n = 0;
+            while (n < rate) {
+                LabeledFeatureVector x = next();
+                if (x == null) break;
+                x = pn.toShard(x);
+                if (pn.getWtvector() != null && margin(pn.getWtvector().getWeights(), x) * x.getLabel() <= 0)
+                    wrong++;
+                rows[n++] = x;
+            }
+            if (n > 0) pn.append(Arrays.copyOf(rows, n), window);
+            added += n;
+            points += pn.getShardSize();
+            nodes++;
+        }
+        total += added;
+        errors += wrong;
+        if (added > 0)
+            System.out.println(name + ": " + CommonState.getTime() + " " + added
+                    + " points, prequential error " + (double) wrong / added
+                    + " (overall " + (double) errors / total + "), "
+                    + ((nodes == 0) ? 0 : points / nodes) + " points per node");
+        return false;
+    }
+
+    /** The next point of the stream, null once the file is exhausted */
+    private LabeledFeatureVector next() {
+        if (!fromFile) return generate();
+        try {
+            String line;
+            while (in != null && (line = in.readLine()) != null) {
+                LabeledFeatureVector x = parse(line);
+                if (x != null) return x;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (in != null) {
+            System.out.println(name + ": end of the stream after " + total + " points");
+            try {
+                in.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            in = null;
+        }
+        return null;
+    }
+
+    /** A point labelled by the hidden hyperplane, flipped with prob. noise */
+    private LabeledFeatureVector generate() {
+        TreeMap<Integer, Double> features = new TreeMap<Integer, Double>();
+        while (features.size() < nnz)
+            features.put(1 + random.nextInt(dim), random.nextGaussian());
+        int[] dims = new int[nnz];
+        double[] vals = new double[nnz];
+        double dot = 0.0;
+        int k = 0;
+        for (Map.Entry<Integer, Double> entry : features.entrySet()) {
+            dims[k] = entry.getKey();
+            vals[k] = entry.getValue();
+            dot += hyperplane[dims[k]] * vals[k];
+            k++;
+        }
+        double y = (dot >= 0) ? 1.0 : -1.0;
+        if (random.nextDouble() < noise) y = -y;
+        return new LabeledFeatureVector(y, dims, vals);
+    }
+
+    /** Parses an svmlight line, null for blank and comment lines */
+    private static LabeledFeatureVector parse(String line) {
+        int hash = line.indexOf('#');
+        if (hash >= 0) line = line.substring(0, hash);
+        String[] tokens = line.trim().split("\\s+");
+        if (tokens.length == 0 || tokens[0].length() == 0) return null;
+        TreeMap<Integer, Double> features = new TreeMap<Integer, Double>();
+        for (int i = 1; i < tokens.length; i++) {
+            int colon = tokens[i].indexOf(':');
+            if (colon > 0 && !tokens[i].startsWith("qid"))
+                features.put(Integer.parseInt(tokens[i].substring(0, colon)),
+                        Double.parseDouble(tokens[i].substring(colon + 1)));
+        }
+        int[] dims = new int[features.size()];
+        double[] vals = new double[features.size()];
+        int k = 0;
+        for (Map.Entry<Integer, Double> entry : features.entrySet()) {
+            dims[k] = entry.getKey();
+            vals[k] = entry.getValue();
+            k++;
+        }
+        return new LabeledFeatureVector(Double.parseDouble(tokens[0]), dims, vals);
+    }
+
+    private static double margin(TreeMap<Integer, Double> w, LabeledFeatureVector x) {
+        double dot = 0.0;
+        for (int k = 0; k < x.size(); k++) {
+            Double v = w.get(x.getDimAt(k));
+            if (v != null) dot += v * x.getValueAt(k);
+        }
+        return dot;
+    }
+
+    private static void normalize(double[] x) {
+        double norm = 0.0;
+        for (int i = 0; i < x.length; i++) norm += x[i] * x[i];
+        norm = Math.sqrt(norm);
+        if (norm > 0)
+            for (int i = 0; i < x.length; i++) x[i] /= norm;
+    }
+}
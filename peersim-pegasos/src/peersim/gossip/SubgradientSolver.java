@@ -0,0 +1,476 @@
+/*
+ * Peersim-Gadget : A Gadget protocol implementation in peersim based on the paper
+ * Chase Henzel, Haimonti Dutta
+ * GADGET SVM: A Gossip-bAseD sub-GradiEnT SVM Solver
+ *
+ * Copyright (C) 2012
+ * Deepak Nayak
+ * Columbia University, Computer Science MS'13
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package peersim.gossip;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import jnipegasos.PrimalSVMWeights;
+import jnisvmlight.LabeledFeatureVector;
+import peersim.config.Configuration;
+
+/**
+ * Class SubgradientSolver
+ * The local step of GADGET: one full batch subgradient step of the Pegasos
+ * objective over the node's shard, w = (1 - lambda*alpha) * N * w + alpha * L
+ * with alpha = 1/(lambda*t) and L the sum of y*x over the points inside the
+ * margin.
+ * <p>
+ * With margins shrink the solver remembers, for every point, the dot product
+ * &lt;w,x&gt; it last computed and the total drift of w at that time, the drift
+ * being the sum of the distances between the weights of successive steps.
+ * Since |&lt;w,x&gt; - &lt;w',x&gt;| &lt;= ||w - w'|| * ||x||, a point whose cached
+ * margin minus (drift since then) * ||x|| is still at least 1 cannot be in
+ * the margin and is skipped without computing its dot product.
+ * <p>
+ * With margins incremental the solver keeps &lt;w,x&gt; of every point up to
+ * date instead. The step changes w by a scalar decay plus the sparse loss
+ * term, so the decay scales all dot products at once and the loss term is
+ * propagated through an inverted feature to point index. Between two steps
+ * push-sum and the projection change w; that change is split into a scaling
+ * of the weights the step left and a sparse residual, propagated the same
+ * way, unless the residual touches more entries than the shard holds, in
+ * which case every dot product is recomputed.
+ * <p>
+ * With stepsize adagrad the global schedule alpha = 1/(lambda*t) is replaced
+ * by per feature steps eta/sqrt(G_k), G_k being the sum of the squared
+ * gradients of feature k, g = lambda*w - L/N, so rare features take large
+ * steps. The accumulators G are averaged by push-sum along with w, so that
+ * all nodes use the same steps.
+ */
+public class SubgradientSolver extends LocalSolver {
+
+	/**
+	 * Config option of the protocol selecting how margins are computed: exact
+	 * (default) computes every dot product in every step, shrink skips the
+	 * points that provably stay outside the margin, incremental updates the
+	 * dot products from the changes of w
+	 * @config
+	 */
+	private static final String PAR_MARGINS = "margins";
+	/**
+	 * Config option of the protocol selecting the step sizes: pegasos
+	 * (default) alpha = 1/(lambda*t), or adagrad
+	 * @config
+	 */
+	private static final String PAR_STEPSIZE = "stepsize";
+	/**
+	 * Config option giving the base step of adagrad, defaults to 0.3
+	 * @config
+	 */
+	private static final String PAR_ETA = "eta";
+
+	private String margins;
+
+	private boolean adaptive;
+
+	private double eta;
+
+	/** adagrad: sum of the squared gradients of every feature */
+	private TreeMap<Integer, Double> accumulator;
+
+	/** adagrad: accumulators being mixed by pushsum2 */
+	private TreeMap<Integer, Double> pendingAccumulator;
+
+	/** shrink: cached margins, drift when they were computed and norms of x */
+	private double[] margin;
+
+	private double[] marginDrift;
+
+	private double[] xnorm;
+
+	/** shrink: total drift of w, and w at the previous step */
+	private double drift;
+
+	private TreeMap<Integer, Double> prevWeights;
+
+	/** version of the shard the caches were built for */
+	private int cachedVersion = -1;
+
+	/** incremental: inverted index, feature to points and values */
+	private HashMap<Integer, int[]> postings;
+
+	private HashMap<Integer, double[]> postingValues;
+
+	/** incremental: entries of the shard, the cost of recomputing all dot products */
+	private long entries;
+
+	/** Dot product refreshes propagated and fully recomputed */
+	public long propagated = 0;
+
+	public long recomputed = 0;
+
+	/** Dot products computed and skipped by this solver */
+	public long evaluated = 0;
+
+	public long skipped = 0;
+
+	/**
+	 * Default constructor for configurable objects.
+	 * @param prefix the prefix of the protocol using this solver
+	 */
+	public SubgradientSolver(String prefix) {
+		margins = Configuration.getString(prefix + "." + PAR_MARGINS, "exact");
+		adaptive = Configuration.getString(prefix + "." + PAR_STEPSIZE, "pegasos").equals("adagrad");
+		eta = Configuration.getDouble(prefix + "." + PAR_ETA, 0.3);
+		accumulator = new TreeMap<Integer, Double>();
+	}
+
+	/** True with adagrad, push-sum then mixes the accumulators */
+	public boolean isAdaptive() {
+		return adaptive;
+	}
+
+	/** The adagrad accumulators of this node */
+	public TreeMap<Integer, Double> getAccumulator() {
+		return accumulator;
+	}
+
+	public void mixAccumulator(List<LocalSolver> solvers, List<Double> weights) {
+		pendingAccumulator = new TreeMap<Integer, Double>();
+		for (int i = 0; i < solvers.size(); i++) {
+			double b = weights.get(i);
+			for (Map.Entry<Integer, Double> entry : solvers.get(i).getAccumulator().entrySet()) {
+				Double v = pendingAccumulator.get(entry.getKey());
+				pendingAccumulator.put(entry.getKey(), ((v == null) ? 0.0 : v) + b * entry.getValue());
+			}
+		}
+	}
+
+	/** Writes the adagrad accumulators, the margin caches are rebuilt */
+	public void save(DataOutput out) throws IOException {
+		SparseVectorCodec.write(out, accumulator, SparseVectorCodec.RAW);
+		SparseVectorCodec.write(out, pendingAccumulator, SparseVectorCodec.RAW);
+	}
+
+	public void load(DataInput in) throws IOException {
+		accumulator = SparseVectorCodec.read(in);
+		pendingAccumulator = SparseVectorCodec.read(in);
+		cachedVersion = -1;
+	}
+
+	public void commitAccumulator() {
+		if(pendingAccumulator != null)
+			accumulator = pendingAccumulator;
+		pendingAccumulator = null;
+	}
+
+	public void step(PegasosNode pn, double lambda, int t) {
+		TreeMap<Integer, Double> L = new TreeMap<Integer, Double>();
+
+		LabeledFeatureVector[] data = pn.getShard();
+		int N = data.length;	// #data points
+		double y;	// label
+		pn.misclassified = 0;	// reset the misclassified count in each iter
+		boolean shrink = margins.equals("shrink");
+		boolean incremental = margins.equals("incremental");
+		if(shrink)
+			updateDrift(pn);
+		else if(incremental)
+			syncMargins(pn);
+		for (int n = 0; n < N; n++) { // data point loop
+			y = data[n].getLabel();
+			int xsize = data[n].size();
+			double dotprod = 0.0;
+			if(incremental) {
+				dotprod = margin[n];
+			}
+			else if(shrink && y * margin[n] - (drift - marginDrift[n]) * xnorm[n] >= 1) {
+				skipped++;	// provably outside the margin
+				continue;
+			}
+			else {
+				evaluated++;
+				dotprod = dot(pn.getWtvector().getWeights(), data[n]);
+			}
+			if(shrink) {
+				margin[n] = dotprod;
+				marginDrift[n] = drift;
+			}
+			if ((y * dotprod) < 1) { // this point is in Si+
+				if((y * dotprod) < 0) pn.misclassified++;
+				// Li calculated.
+				for(int xiter = 0; xiter < xsize; xiter++) {// xsize loop
+					int xkey = data[n].getDimAt(xiter);
+					double xval = data[n].getValueAt(xiter);
+					if(L.containsKey(xkey)) {
+						L.put(xkey, L.get(xkey) + y * xval);
+					}
+					else
+						L.put(xkey, y * xval);
+				}//xsize loop
+			}
+		} // data point loop end
+		if(Debug.ON) {
+			System.out.println("[DEBUG] #misclassified at node[" + pn.getID() + "] : "
+						+ pn.misclassified + ", dot products computed " + evaluated
+						+ ", skipped " + skipped + ", refreshes propagated " + propagated
+						+ ", recomputed " + recomputed);
+		}
+		if(adaptive) {
+			// the dot products hold for the weights before the update
+			if(incremental)
+				prevWeights = new TreeMap<Integer, Double>(pn.getWtvector().getWeights());
+			adagrad(pn, L, lambda, N);
+			return;
+		}
+		double alpha = 1.0 / (lambda * t); // our loop starts from 0
+		PrimalSVMWeights w = pn.getWtvector();
+		// Lots of confusion, so do it in two step
+		// inefficient but clean
+		Iterator<Integer> w_it = w.getWeights().keySet().iterator();
+		while (w_it.hasNext()) {
+			Integer index = w_it.next();
+			// not sure if first term should be multiplied by N
+			double newval = (1 - lambda * alpha) * N * w.getWeights().get(index);
+			w.addFeature(index, newval);
+		}
+		Iterator<Integer> l_it = L.keySet().iterator();
+		while (l_it.hasNext()) {
+			Integer index = l_it.next();
+			double lossterm = L.get(index);
+			if(w.getWeights().containsKey(index)) {
+				w.addFeature(index, alpha * lossterm +
+						w.getWeights().get(index));
+			}
+			else {
+				w.addFeature(index, alpha * lossterm);
+			}
+		} // ~w_t1/2 calculated, now do push sum
+		if(incremental) {
+			// same update on the dot products: decay, then the loss term
+			double decay = (1 - lambda * alpha) * N;
+			for (int n = 0; n < N; n++)
+				margin[n] *= decay;
+			propagate(L, alpha);
+			prevWeights = new TreeMap<Integer, Double>(pn.getWtvector().getWeights());
+		}
+	}
+
+	/**
+	 * The adagrad step, w_k = N * (w_k - eta * g_k / sqrt(G_k)), keeping the
+	 * factor N of the pegasos step so that pushsum2 weights stay right.
+	 */
+	private void adagrad(PegasosNode pn, TreeMap<Integer, Double> L, double lambda, int N) {
+		TreeMap<Integer, Double> w = pn.getWtvector().getWeights();
+		TreeMap<Integer, Double> next = new TreeMap<Integer, Double>();
+		for (Map.Entry<Integer, Double> entry : w.entrySet()) {
+			Double l = L.get(entry.getKey());
+			double g = lambda * entry.getValue() - ((l == null || N == 0) ? 0.0 : l / N);
+			next.put(entry.getKey(), N * adagradStep(entry.getKey(), entry.getValue(), g));
+		}
+		for (Map.Entry<Integer, Double> entry : L.entrySet()) {
+			if(w.containsKey(entry.getKey())) continue;
+			double g = -entry.getValue() / N;
+			next.put(entry.getKey(), N * adagradStep(entry.getKey(), 0.0, g));
+		}
+		pn.getWtvector().setFeatures(next);
+	}
+
+	private double adagradStep(Integer k, double w, double g) {
+		Double acc = accumulator.get(k);
+		double G = ((acc == null) ? 0.0 : acc) + g * g;
+		accumulator.put(k, G);
+		return (G > 0.0) ? w - eta * g / Math.sqrt(G) : w;
+	}
+
+	/** &lt;w,x&gt; */
+	private static double dot(TreeMap<Integer, Double> w, LabeledFeatureVector x) {
+		double dotprod = 0.0;
+		// calculate <w,x> using two iterator which moves over x[i] and w
+		for (int xiter = 0; xiter < x.size(); xiter++) { // dot product loop
+			Double wval = w.get(x.getDimAt(xiter));
+			if(wval != null)	// wtvector has this dim
+				dotprod += x.getValueAt(xiter) * wval;
+		}// dot product loop end
+		return dotprod;
+	}
+
+	/** Adds scale * &lt;delta,x&gt; to the dot product of every point x */
+	private void propagate(Map<Integer, Double> delta, double scale) {
+		for (Map.Entry<Integer, Double> entry : delta.entrySet()) {
+			int[] points = postings.get(entry.getKey());
+			if(points == null) continue;
+			double[] values = postingValues.get(entry.getKey());
+			double d = scale * entry.getValue();
+			for (int i = 0; i < points.length; i++)
+				margin[points[i]] += d * values[i];
+		}
+	}
+
+	/**
+	 * Brings the dot products in line with the current weights, which
+	 * push-sum and the projection changed since the last step. The weights
+	 * are written as s * (weights left by the step) + residual, with s the
+	 * least squares fit, and the residual is propagated if that is cheaper
+	 * than recomputing all dot products.
+	 */
+	private void syncMargins(PegasosNode pn) {
+		LabeledFeatureVector[] data = pn.getShard();
+		TreeMap<Integer, Double> w = pn.getWtvector().getWeights();
+		if(pn.getShardVersion() != cachedVersion) {
+			buildIndex(data);
+			cachedVersion = pn.getShardVersion();
+			prevWeights = null;
+		}
+		if(prevWeights == null) {
+			recompute(data, w);
+			return;
+		}
+		double wl = 0.0, ll = 0.0, wmax = 0.0;
+		for (Map.Entry<Integer, Double> entry : prevWeights.entrySet()) {
+			Double v = w.get(entry.getKey());
+			if(v != null) wl += v * entry.getValue();
+			ll += entry.getValue() * entry.getValue();
+		}
+		for (Double v : w.values())
+			wmax = Math.max(wmax, Math.abs(v));
+		double scale = (ll == 0.0) ? 0.0 : wl / ll;
+		// residual entries below rounding noise are dropped
+		double eps = 1e-12 * wmax;
+		TreeMap<Integer, Double> residual = new TreeMap<Integer, Double>();
+		long cost = 0;
+		for (Map.Entry<Integer, Double> entry : w.entrySet()) {
+			Double l = prevWeights.get(entry.getKey());
+			double d = entry.getValue() - scale * ((l == null) ? 0.0 : l);
+			if(Math.abs(d) > eps) residual.put(entry.getKey(), d);
+		}
+		for (Map.Entry<Integer, Double> entry : prevWeights.entrySet()) {
+			if(!w.containsKey(entry.getKey()) && Math.abs(scale * entry.getValue()) > eps)
+				residual.put(entry.getKey(), -scale * entry.getValue());
+		}
+		for (Integer k : residual.keySet()) {
+			int[] points = postings.get(k);
+			if(points != null) cost += points.length;
+		}
+		if(cost > entries) {
+			recompute(data, w);
+			return;
+		}
+		for (int n = 0; n < margin.length; n++)
+			margin[n] *= scale;
+		propagate(residual, 1.0);
+		propagated++;
+	}
+
+	private void recompute(LabeledFeatureVector[] data, TreeMap<Integer, Double> w) {
+		for (int n = 0; n < data.length; n++)
+			margin[n] = dot(w, data[n]);
+		evaluated += data.length;
+		recomputed++;
+	}
+
+	/** Builds the inverted index of the shard */
+	private void buildIndex(LabeledFeatureVector[] data) {
+		HashMap<Integer, List<Integer>> lists = new HashMap<Integer, List<Integer>>();
+		entries = 0;
+		for (int n = 0; n < data.length; n++) {
+			for (int k = 0; k < data[n].size(); k++) {
+				List<Integer> l = lists.get(data[n].getDimAt(k));
+				if(l == null) {
+					l = new ArrayList<Integer>();
+					lists.put(data[n].getDimAt(k), l);
+				}
+				l.add(n);
+				l.add(k);
+				entries++;
+			}
+		}
+		postings = new HashMap<Integer, int[]>();
+		postingValues = new HashMap<Integer, double[]>();
+		for (Map.Entry<Integer, List<Integer>> entry : lists.entrySet()) {
+			List<Integer> l = entry.getValue();
+			int[] points = new int[l.size() / 2];
+			double[] values = new double[l.size() / 2];
+			for (int i = 0; i < points.length; i++) {
+				points[i] = l.get(2 * i);
+				values[i] = data[points[i]].getValueAt(l.get(2 * i + 1));
+			}
+			postings.put(entry.getKey(), points);
+			postingValues.put(entry.getKey(), values);
+		}
+		margin = new double[data.length];
+	}
+
+	/**
+	 * Adds the distance between the current weights and those of the previous
+	 * step to the drift. The caches are (re)built when the shard changed.
+	 */
+	private void updateDrift(PegasosNode pn) {
+		LabeledFeatureVector[] data = pn.getShard();
+		if(pn.getShardVersion() != cachedVersion) {
+			margin = new double[data.length];
+			marginDrift = new double[data.length];
+			xnorm = new double[data.length];
+			for (int n = 0; n < data.length; n++) {
+				double sq = 0.0;
+				for (int k = 0; k < data[n].size(); k++)
+					sq += data[n].getValueAt(k) * data[n].getValueAt(k);
+				xnorm[n] = Math.sqrt(sq);
+				// never skipped before its margin is computed once
+				marginDrift[n] = Double.NEGATIVE_INFINITY;
+			}
+			drift = 0.0;
+			prevWeights = null;
+			cachedVersion = pn.getShardVersion();
+		}
+		TreeMap<Integer, Double> w = pn.getWtvector().getWeights();
+		if(prevWeights != null) {
+			double sq = 0.0;
+			for (Map.Entry<Integer, Double> entry : w.entrySet()) {
+				Double p = prevWeights.get(entry.getKey());
+				double d = entry.getValue() - ((p == null) ? 0.0 : p);
+				sq += d * d;
+			}
+			for (Map.Entry<Integer, Double> entry : prevWeights.entrySet()) {
+				if(!w.containsKey(entry.getKey()))
+					sq += entry.getValue() * entry.getValue();
+			}
+			drift += Math.sqrt(sq);
+		}
+		prevWeights = new TreeMap<Integer, Double>(w);
+	}
+
+	public Object clone() {
+		SubgradientSolver s = (SubgradientSolver)super.clone();
+		// caches belong to the shard of one node
+		s.margin = null;
+		s.marginDrift = null;
+		s.xnorm = null;
+		s.prevWeights = null;
+		s.cachedVersion = -1;
+		s.postings = null;
+		s.postingValues = null;
+		s.accumulator = new TreeMap<Integer, Double>();
+		s.pendingAccumulator = null;
+		return s;
+	}
+}
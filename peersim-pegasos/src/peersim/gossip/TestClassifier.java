@@ -1,12 +1,7 @@
 package peersim.gossip;
 
 import java.io.File;
-import java.net.MalformedURLException;
-
-import jnipegasos.JNIPegasosInterface;
-import jnipegasos.PrimalSVMWeights;
-import jnisvmlight.LabeledFeatureVector;
-import jnisvmlight.SVMLightInterface;
+import java.util.Map;
 
 import com.martiansoftware.jsap.*;
 
@@ -33,57 +28,73 @@ public class TestClassifier {
 									.setDefault("1.0")
 									.setStringParser(JSAP.DOUBLE_PARSER);
 		jsap.registerParameter(opt3);
+		// must match network.node.hashbits of the training run, 0 for none
+		FlaggedOption opt4 = new FlaggedOption("hashBits")
+									.setLongFlag("hashBits")
+									.setRequired(false)
+									.setDefault("0")
+									.setStringParser(JSAP.INTEGER_PARSER);
+		jsap.registerParameter(opt4);
+		FlaggedOption opt5 = new FlaggedOption("threads")
+									.setLongFlag("threads")
+									.setRequired(false)
+									.setDefault("" + Runtime.getRuntime().availableProcessors())
+									.setStringParser(JSAP.INTEGER_PARSER);
+		jsap.registerParameter(opt5);
+		// with a binary export of FinalControl, the node whose model is scored
+		FlaggedOption opt6 = new FlaggedOption("node")
+									.setLongFlag("node")
+									.setRequired(false)
+									.setDefault("-1")
+									.setStringParser(JSAP.LONG_PARSER);
+		jsap.registerParameter(opt6);
+		// converts the data file to the binary layout (.bin), read without parsing
+		FlaggedOption opt7 = new FlaggedOption("writeBinary")
+									.setLongFlag("writeBinary")
+									.setRequired(false)
+									.setStringParser(JSAP.STRING_PARSER);
+		jsap.registerParameter(opt7);
 		JSAPResult config = jsap.parse(args);
+		if(!config.success()) {
+			for (java.util.Iterator<?> it = config.getErrorMessageIterator(); it.hasNext();)
+				System.err.println("Error: " + it.next());
+			System.err.println("Usage: TestClassifier " + jsap.getUsage());
+			System.exit(1);
+		}
 		
 		String dataFile = config.getString("data");
 		String modelFile = config.getString("model");
 		double lambda = config.getDouble("lambda");	
-		JNIPegasosInterface trainer = new JNIPegasosInterface();
-		LabeledFeatureVector[] dataset;
-		PrimalSVMWeights model;
-		double objValue = 0.0;
-		int zeroOneError = 0;
-		double lossValue = 0.0;
-		double normValue = 0.0;
-		try {
-			dataset = SVMLightInterface.getLabeledFeatureVectorsFromURL(new File(dataFile).toURL(), 0);
-			int N = dataset.length;
-			model = trainer.getWeightsfromFile(modelFile);
-			// in test_objective or test_classify normValue is actually sqr of norm	
-			normValue = model.getL2Norm();
-			normValue *= normValue;
-			objValue = normValue * lambda / 2.0;
-			for(int n=0; n<N; n++) { // data point loop
-				//curr_loss = 1 - model * data[i]
-				double y = dataset[n].getLabel(); // label of nth data point
-				int xsize = dataset[n].size(); // dimension of nth data point
-				double dotprod = 0.0;
-				for (int xiter = 0; xiter < xsize; xiter++) { // dot product loop
-					int xdim = dataset[n].getDimAt(xiter);
-					double xval = dataset[n].getValueAt(xiter);
-					if(model.getWeights().containsKey(xdim)) {// wtvector has this dim
-						double wval = model.getWeights().get(xdim);
-						dotprod += xval * wval;
-					}
-				}// dot product loop end
-				// calculate objective, loss, error, norm, etc
-				double curr_loss = 1 - y*dotprod;
-				if(curr_loss < 0) curr_loss = 0.0;
-				lossValue += curr_loss;
-				if((y*dotprod) < 0) zeroOneError++;
-			}// data point loop end
-			lossValue = lossValue/N;
-			objValue += lossValue;
-			System.out.println("Weights Norm Value:\t" + normValue);
-			System.out.println("Objective Value:\t" + objValue);
-			System.out.println("Loss Value:\t" + lossValue);
-			System.out.println("Zero One Error:\t(" + zeroOneError + "/" + N + ") " + (1.0 * zeroOneError/N));
-				
+		int hashBits = config.getInt("hashBits");
+		int threads = config.getInt("threads");
+		long node = config.getLong("node");
+		String binaryFile = config.getString("writeBinary");
+		if(binaryFile != null) {
+			long rows = ScoringEngine.toBinary(new File(dataFile), new File(binaryFile));
+			System.out.println("Wrote " + rows + " rows to " + binaryFile);
 		}
-		catch (MalformedURLException me) {
-			me.printStackTrace();
-		}
-				
+		// the binary export holds all nodes, a text model a single one
+		Map<Integer, Double> weights = (node >= 0)
+				? ModelExporter.read(new File(modelFile), node)
+				: ScoringEngine.readTextModel(new File(modelFile));
+		double[] w = ScoringEngine.dense(weights);
+		// in test_objective or test_classify normValue is actually sqr of norm	
+		double normValue = 0.0;
+		for (double v : w) normValue += v * v;
+		ScoringEngine.Scores scores = new ScoringEngine.Scores(w);
+		long start = System.nanoTime();
+		ScoringEngine.scan(new File(dataFile), threads,
+				(hashBits > 0) ? new FeatureHasher(hashBits) : null, scores);
+		double seconds = (System.nanoTime() - start) / 1e9;
+		long N = scores.rows;
+		double lossValue = scores.hinge / N;
+		double objValue = normValue * lambda / 2.0 + lossValue;
+		System.out.println("Weights Norm Value:\t" + normValue);
+		System.out.println("Objective Value:\t" + objValue);
+		System.out.println("Loss Value:\t" + lossValue);
+		System.out.println("Zero One Error:\t(" + scores.errors + "/" + N + ") " + (1.0 * scores.errors/N));
+		System.out.printf("Throughput:\t%d rows in %.3f s, %.0f rows/s on %d threads%n",
+				N, seconds, N / Math.max(seconds, 1e-9), threads);
 	}
 		
 }
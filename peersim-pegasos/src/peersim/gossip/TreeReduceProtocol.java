@@ -0,0 +1,62 @@
+/*
+ * Peersim-Gadget : A Gadget protocol implementation in peersim based on the paper
+ * Chase Henzel, Haimonti Dutta
+ * GADGET SVM: A Gossip-bAseD sub-GradiEnT SVM Solver
+ *
+ * Copyright (C) 2012
+ * Deepak Nayak
+ * Columbia University, Computer Science MS'13
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package peersim.gossip;
+
+/**
+ * Class TreeReduceProtocol
+ * Exact aggregation baseline: reduce then broadcast along the binary tree of
+ * the network indices (the parent of i is (i-1)/2). In the first d steps, d
+ * being the depth of the tree, the nodes of depth d-s add their partial sum to
+ * their parent; in the next d steps the root's total flows back down one level
+ * per step. The overlay is not used.
+ */
+public class TreeReduceProtocol extends ReduceProtocol {
+
+	public TreeReduceProtocol(String prefix) {
+		super(prefix);
+	}
+
+	protected String getName() { return "tree"; }
+
+	protected int steps(int n) { return 2 * depth(n - 1); }
+
+	protected void communicate(int i, int step, int n) {
+		int d = depth(n - 1);
+		if(i == 0) return;
+		int parent = (i - 1) / 2;
+		if(step < d) {
+			if(depth(i) == d - step)
+				add(weights(i), weights(parent));
+		}
+		else {
+			if(depth(i) == step - d + 1)
+				copy(weights(parent), weights(i));
+		}
+	}
+
+	/** depth of index i in the tree, the root being at depth 0 */
+	private static int depth(int i) {
+		return 31 - Integer.numberOfLeadingZeros(i + 1);
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ * Peersim-Gadget : A Gadget protocol implementation in peersim based on the paper
+ * Chase Henzel, Haimonti Dutta
+ * GADGET SVM: A Gossip-bAseD sub-GradiEnT SVM Solver
+ *
+ * Copyright (C) 2012
+ * Deepak Nayak
+ * Columbia University, Computer Science MS'13
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package peersim.gossip;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class WeightArena
+ * Off-heap storage for the weight vectors of all nodes: fixed-stride rows of
+ * doubles carved out of large direct buffers (slabs). A row costs its
+ * doubles plus one small view object on the heap, so the heap and the work
+ * of the garbage collector no longer grow with the number of weights, and
+ * a million nodes fit in -XX:MaxDirectMemorySize instead of the heap.
+ * Rows are never freed, they live as long as the simulation.
+ */
+public final class WeightArena {
+
+	/** Default slab size, 256 MB */
+	public static final long SLAB_BYTES = 256L << 20;
+
+	/** doubles per row */
+	private final int stride;
+
+	private final int rowsPerSlab;
+
+	private final List<ByteBuffer> slabs = new ArrayList<ByteBuffer>();
+
+	/** rows handed out from the last slab */
+	private int used;
+
+	/**
+	 * @param stride doubles per row
+	 * @param slabBytes size of a slab, rounded down to whole rows and to at
+	 * most 2 GB, the limit of a direct buffer; at least one row
+	 */
+	public WeightArena(int stride, long slabBytes) {
+		this.stride = stride;
+		long rowBytes = 8L * Math.max(1, stride);
+		long bytes = Math.min(slabBytes, Integer.MAX_VALUE - 7);
+		rowsPerSlab = (int)Math.max(1, bytes / rowBytes);
+		used = rowsPerSlab;
+	}
+
+	/** A new zeroed row of stride doubles */
+	public DoubleBuffer allocate() {
+		if(used == rowsPerSlab) {
+			slabs.add(ByteBuffer.allocateDirect(rowsPerSlab * stride * 8)
+					.order(ByteOrder.nativeOrder()));
+			used = 0;
+		}
+		ByteBuffer slab = slabs.get(slabs.size() - 1).duplicate();
+		slab.position(used * stride * 8);
+		slab.limit((used + 1) * stride * 8);
+		used++;
+		return slab.slice().order(ByteOrder.nativeOrder()).asDoubleBuffer();
+	}
+
+	public int getStride() {
+		return stride;
+	}
+
+	/** Rows handed out so far */
+	public long getRows() {
+		return slabs.isEmpty() ? 0 : (long)(slabs.size() - 1) * rowsPerSlab + used;
+	}
+
+	/** Off-heap bytes reserved */
+	public long getBytes() {
+		return (long)slabs.size() * rowsPerSlab * stride * 8;
+	}
+}
@@ -0,0 +1,198 @@
+/*
+ * Peersim-Gadget : A Gadget protocol implementation in peersim based on the paper
+ * Chase Henzel, Haimonti Dutta
+ * GADGET SVM: A Gossip-bAseD sub-GradiEnT SVM Solver
+ *
+ * Copyright (C) 2012
+ * Deepak Nayak
+ * Columbia University, Computer Science MS'13
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package peersim.gossip;
+
+import java.nio.DoubleBuffer;
+import java.util.Map;
+import java.util.TreeMap;
+
+import jnisvmlight.LabeledFeatureVector;
+import peersim.core.Network;
+
+/**
+ * Class WeightBank
+ * A small bank of dense weight vectors over the same features, stored
+ * feature-major in one array: the weights of feature f for the models
+ * 0..K-1 are contiguous. A sparse point is then read once to get the margins
+ * of all models, and whole banks are averaged, scaled or sent as a single
+ * array. The array is on the heap, or a row of a {@link WeightArena} off the
+ * heap.
+ */
+public class WeightBank implements Cloneable {
+
+	private final int dim;
+
+	private final int models;
+
+	/** w[f*models + k] is the weight of feature f in model k */
+	private DoubleBuffer w;
+
+	/** number of doubles */
+	private final int size;
+
+	/**
+	 * @param dim number of features, indices 0..dim-1
+	 * @param models number of weight vectors
+	 */
+	public WeightBank(int dim, int models) {
+		this(dim, models, DoubleBuffer.wrap(new double[dim * models]));
+	}
+
+	/**
+	 * A bank stored in the given buffer, e.g. a row of a {@link WeightArena},
+	 * of at least dim*models doubles
+	 */
+	public WeightBank(int dim, int models, DoubleBuffer w) {
+		this.dim = dim;
+		this.models = models;
+		this.size = dim * models;
+		if(w.capacity() < size)
+			throw new IllegalArgumentException("buffer of " + w.capacity()
+					+ " doubles for a bank of " + size);
+		this.w = w;
+	}
+
+	public int getDimension() { return dim; }
+
+	public int getModels() { return models; }
+
+	/** Bytes of the bank on the wire */
+	public long getBytes() { return 8L * size; }
+
+	public double get(int f, int k) { return w.get(f * models + k); }
+
+	public void set(int f, int k, double v) { w.put(f * models + k, v); }
+
+	/** out[k] = &lt;w_k, x&gt;, reading x once; features out of range are ignored */
+	public void margins(LabeledFeatureVector x, double[] out) {
+		for (int k = 0; k < models; k++) out[k] = 0.0;
+		for (int i = 0; i < x.size(); i++) {
+			int f = x.getDimAt(i);
+			if(f >= dim) continue;
+			double v = x.getValueAt(i);
+			int base = f * models;
+			for (int k = 0; k < models; k++)
+				out[k] += v * w.get(base + k);
+		}
+	}
+
+	/** w_k += coef[k] * x for every model k */
+	public void addPoint(LabeledFeatureVector x, double[] coef) {
+		for (int i = 0; i < x.size(); i++) {
+			int f = x.getDimAt(i);
+			if(f >= dim) continue;
+			double v = x.getValueAt(i);
+			int base = f * models;
+			for (int k = 0; k < models; k++)
+				w.put(base + k, w.get(base + k) + coef[k] * v);
+		}
+	}
+
+	/** w_k = a[k] * w_k + b[k] * other_k */
+	public void combine(double[] a, WeightBank other, double[] b) {
+		DoubleBuffer o = other.w;
+		for (int base = 0; base < size; base += models) {
+			for (int k = 0; k < models; k++)
+				w.put(base + k, a[k] * w.get(base + k) + b[k] * o.get(base + k));
+		}
+	}
+
+	/** w_k = a[k] * w_k */
+	public void scale(double[] a) {
+		for (int base = 0; base < size; base += models) {
+			for (int k = 0; k < models; k++)
+				w.put(base + k, a[k] * w.get(base + k));
+		}
+	}
+
+	/** ||w_k|| for every model */
+	public double[] norms() {
+		double[] n = new double[models];
+		for (int base = 0; base < size; base += models) {
+			for (int k = 0; k < models; k++) {
+				double v = w.get(base + k);
+				n[k] += v * v;
+			}
+		}
+		for (int k = 0; k < models; k++) n[k] = Math.sqrt(n[k]);
+		return n;
+	}
+
+	/** Both banks get the average of the two */
+	public void average(WeightBank other) {
+		DoubleBuffer o = other.w;
+		for (int i = 0; i < size; i++) {
+			double avg = (w.get(i) + o.get(i)) / 2;
+			w.put(i, avg);
+			o.put(i, avg);
+		}
+	}
+
+	public void clear() {
+		for (int i = 0; i < size; i++) w.put(i, 0.0);
+	}
+
+	/** Sets model k to the given sparse weights */
+	public void load(int k, Map<Integer, Double> weights) {
+		for (int f = 0; f < dim; f++) w.put(f * models + k, 0.0);
+		for (Map.Entry<Integer, Double> entry : weights.entrySet()) {
+			if(entry.getKey() < dim) w.put(entry.getKey() * models + k, entry.getValue());
+		}
+	}
+
+	/** The non-zero weights of model k */
+	public TreeMap<Integer, Double> toWeights(int k) {
+		TreeMap<Integer, Double> map = new TreeMap<Integer, Double>();
+		for (int f = 0; f < dim; f++) {
+			double v = w.get(f * models + k);
+			if(v != 0.0) map.put(f, v);
+		}
+		return map;
+	}
+
+	public Object clone() {
+		WeightBank b = null;
+		try { b = (WeightBank)super.clone(); }
+		catch( CloneNotSupportedException e ) {} // never happens
+		// the copy is always on the heap
+		double[] copy = new double[size];
+		for (int i = 0; i < size; i++) copy[i] = w.get(i);
+		b.w = DoubleBuffer.wrap(copy);
+		return b;
+	}
+
+	/** Largest feature index found in the shards and weights of all nodes */
+	static int maxFeature() {
+		int max = 0;
+		for(int i=0;i<Network.size();i++) {
+			PegasosNode pn = (PegasosNode)Network.get(i);
+			if(!pn.getWtvector().getWeights().isEmpty())
+				max = Math.max(max, pn.getWtvector().getWeights().lastKey());
+			for(LabeledFeatureVector x : pn.getShard()) {
+				if(x.size() > 0) max = Math.max(max, x.getDimAt(x.size() - 1));
+			}
+		}
+		return max;
+	}
+}
@@ -0,0 +1,244 @@
+/*
+ * Peersim-Gadget : A Gadget protocol implementation in peersim based on the paper
+ * Chase Henzel, Haimonti Dutta
+ * GADGET SVM: A Gossip-bAseD sub-GradiEnT SVM Solver
+ *
+ * Copyright (C) 2012
+ * Deepak Nayak
+ * Columbia University, Computer Science MS'13
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package peersim.gossip;
+
+import java.util.TreeMap;
+
+import peersim.config.Configuration;
+import peersim.core.CommonState;
+import peersim.dynamics.WireGraph;
+import peersim.graph.Graph;
+
+/**
+ * Class WireTopology
+ * Initializer wiring the {@link peersim.core.Linkable} protocol into one of
+ * several undirected overlays, selected with init.0.type:
+ * <ul>
+ * <li>ring: ring lattice, every node linked to its k/2 successors and predecessors</li>
+ * <li>torus: 2D torus, 4 neighbours per node</li>
+ * <li>regular: random k-regular graph (configuration model, self loops and
+ * duplicate links are dropped so a few nodes end up with degree k-1)</li>
+ * <li>smallworld: Watts-Strogatz, a ring lattice whose links are rewired with
+ * probability init.0.beta</li>
+ * <li>scalefree: Barabasi-Albert, every new node links to k/2 nodes chosen
+ * proportionally to their degree</li>
+ * <li>hypercube: i linked to every i xor 2^b smaller than the network size</li>
+ * </ul>
+ * Every generator costs O(n*k), so a million nodes wire in seconds. After
+ * wiring it prints the degree distribution and the spectral gap of the
+ * pushsum1 gossip matrix (see {@link Spectral#uniformGossip}), unless
+ * init.0.noreport is given. The estimate costs up to init.0.maxiter sparse
+ * products.
+ */
+public class WireTopology extends WireGraph {
+
+	/**
+	 * Overlay to build, see class comment
+	 * @config
+	 */
+	private static final String PAR_TYPE = "type";
+	/**
+	 * Degree parameter k, defaults to 2
+	 * @config
+	 */
+	private static final String PAR_DEGREE = "k";
+	/**
+	 * Rewiring probability of smallworld, defaults to 0.1
+	 * @config
+	 */
+	private static final String PAR_BETA = "beta";
+	/**
+	 * Flag to skip the degree and spectral gap report
+	 * @config
+	 */
+	private static final String PAR_NOREPORT = "noreport";
+	/**
+	 * Maximum number of Lanczos iterations for the spectral gap
+	 * @config
+	 */
+	private static final String PAR_MAXITER = "maxiter";
+
+	private final String name;
+
+	private final String type;
+
+	private final int k;
+
+	private final double beta;
+
+	private final boolean report;
+
+	private final int maxIter;
+
+	public WireTopology(String prefix) {
+		super(prefix);
+		name = prefix;
+		type = Configuration.getString(prefix + "." + PAR_TYPE);
+		k = Configuration.getInt(prefix + "." + PAR_DEGREE, 2);
+		beta = Configuration.getDouble(prefix + "." + PAR_BETA, 0.1);
+		report = !Configuration.contains(prefix + "." + PAR_NOREPORT);
+		maxIter = Configuration.getInt(prefix + "." + PAR_MAXITER, Spectral.MAX_ITER);
+	}
+
+	public void wire(Graph g) {
+		long start = System.currentTimeMillis();
+		if(type.equals("ring")) ring(g);
+		else if(type.equals("torus")) torus(g);
+		else if(type.equals("regular")) regular(g);
+		else if(type.equals("smallworld")) smallWorld(g);
+		else if(type.equals("scalefree")) scaleFree(g);
+		else if(type.equals("hypercube")) hypercube(g);
+		else throw new IllegalArgumentException(name + ": unknown topology " + type);
+		System.out.println(name + ": wired " + type + " over " + g.size() + " nodes in "
+				+ (System.currentTimeMillis() - start) + " ms");
+		if(report) report(g);
+	}
+
+	private static void link(Graph g, int i, int j) {
+		if(i == j) return;
+		g.setEdge(i, j);
+		g.setEdge(j, i);
+	}
+
+	private void ring(Graph g) {
+		int n = g.size();
+		for(int i=0;i<n;i++) {
+			for(int s=1;s<=Math.max(1, k/2);s++) link(g, i, (i + s) % n);
+		}
+	}
+
+	private void torus(Graph g) {
+		int n = g.size();
+		int w = Math.max(1, (int)Math.sqrt(n));
+		int h = (n + w - 1) / w;
+		for(int i=0;i<n;i++) {
+			int r = i / w, c = i % w;
+			int right = r * w + (c + 1) % w;
+			if(right >= n) right = r * w;
+			int down = ((r + 1) % h) * w + c;
+			if(down >= n) down = c;
+			link(g, i, right);
+			link(g, i, down);
+		}
+	}
+
+	private void regular(Graph g) {
+		int n = g.size();
+		int[] stubs = new int[n * k - (n * k) % 2];
+		for(int s=0;s<stubs.length;s++) stubs[s] = s % n;
+		for(int s=stubs.length-1;s>0;s--) {
+			int r = CommonState.r.nextInt(s + 1);
+			int tmp = stubs[s]; stubs[s] = stubs[r]; stubs[r] = tmp;
+		}
+		for(int s=0;s+1<stubs.length;s+=2) {
+			if(!g.isEdge(stubs[s], stubs[s+1])) link(g, stubs[s], stubs[s+1]);
+		}
+	}
+
+	private void smallWorld(Graph g) {
+		int n = g.size();
+		for(int i=0;i<n;i++) {
+			for(int s=1;s<=Math.max(1, k/2);s++) {
+				int j = (i + s) % n;
+				if(CommonState.r.nextDouble() < beta) {
+					// a few attempts to find a new end point, else keep the lattice link
+					for(int a=0;a<8;a++) {
+						int c = CommonState.r.nextInt(n);
+						if(c != i && !g.isEdge(i, c)) { j = c; break; }
+					}
+				}
+				link(g, i, j);
+			}
+		}
+	}
+
+	private void scaleFree(Graph g) {
+		int n = g.size();
+		int m = Math.max(1, k/2);
+		// every link adds both end points, so picking a random entry picks a
+		// node proportionally to its degree
+		int[] ends = new int[2 * m * n + 2 * m * m];
+		int len = 0;
+		int core = Math.min(n, m + 1);
+		for(int i=0;i<core;i++) {
+			for(int j=i+1;j<core;j++) {
+				link(g, i, j);
+				ends[len++] = i;
+				ends[len++] = j;
+			}
+		}
+		int[] targets = new int[m];
+		for(int v=core;v<n;v++) {
+			int found = 0;
+			for(int a=0;found<m && a<16*m;a++) {
+				int c = (len == 0) ? CommonState.r.nextInt(v) : ends[CommonState.r.nextInt(len)];
+				boolean dup = false;
+				for(int t=0;t<found;t++) if(targets[t] == c) dup = true;
+				if(!dup) targets[found++] = c;
+			}
+			for(int t=0;t<found;t++) {
+				link(g, v, targets[t]);
+				ends[len++] = v;
+				ends[len++] = targets[t];
+			}
+		}
+	}
+
+	private void hypercube(Graph g) {
+		int n = g.size();
+		for(int i=0;i<n;i++) {
+			for(int b=1;b<n;b<<=1) {
+				int j = i ^ b;
+				if(j > i && j < n) link(g, i, j);
+			}
+		}
+	}
+
+	/** Prints the degree distribution and spectral gap of the wired overlay */
+	private void report(Graph g) {
+		int n = g.size();
+		int[][] nbrs = new int[n][];
+		TreeMap<Integer, Integer> hist = new TreeMap<Integer, Integer>();
+		long links = 0;
+		for(int i=0;i<n;i++) {
+			int[] row = new int[g.degree(i)];
+			int d = 0;
+			for(Integer j : g.getNeighbours(i)) row[d++] = j;
+			nbrs[i] = row;
+			links += row.length;
+			Integer c = hist.get(row.length);
+			hist.put(row.length, (c == null) ? 1 : c + 1);
+		}
+		StringBuilder sb = new StringBuilder();
+		for(java.util.Map.Entry<Integer, Integer> e : hist.entrySet()) {
+			sb.append(e.getKey()).append(':').append(e.getValue()).append(' ');
+		}
+		System.out.println(name + ": degree min " + hist.firstKey() + " max " + hist.lastKey()
+				+ " mean " + (1.0 * links / n) + " distribution (degree:nodes) " + sb);
+		double rate = Spectral.uniformCycleRate(nbrs, maxIter);
+		System.out.println(name + ": pushsum1 contraction per cycle " + rate
+				+ ", spectral gap per cycle " + (1 - rate)
+				+ ", per message " + (1 - Math.pow(rate, 1.0 / n)));
+	}
+}
@@ -1,6 +1,6 @@
 #!/bin/sh
 usage() {
-	echo "Usage: $0 <dataFileName> <modelFileName> [lambda]"
+	echo "Usage: $0 <dataFileName> <modelFileName> [lambda] [hashBits] [threads]"
 	exit 1
 }
 #[[ $# -le 2 ]] && usage
@@ -10,6 +10,12 @@ then
 elif [[ $# -eq 3 ]]
 then
 	java -Xmx128m -classpath ./lib/*:classes -Djava.library.path=./lib peersim.gossip.TestClassifier --dataFile $1 --modelFile $2 --lambda $3
+elif [[ $# -eq 4 ]]
+then
+	java -Xmx128m -classpath ./lib/*:classes -Djava.library.path=./lib peersim.gossip.TestClassifier --dataFile $1 --modelFile $2 --lambda $3 --hashBits $4
+elif [[ $# -eq 5 ]]
+then
+	java -Xmx128m -classpath ./lib/*:classes -Djava.library.path=./lib peersim.gossip.TestClassifier --dataFile $1 --modelFile $2 --lambda $3 --hashBits $4 --threads $5
 else
 	usage
 fi